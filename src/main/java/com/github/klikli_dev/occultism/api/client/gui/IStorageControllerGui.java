@@ -23,6 +23,7 @@
 package com.github.klikli_dev.occultism.api.client.gui;
 
 import com.github.klikli_dev.occultism.api.common.data.MachineReference;
+import com.github.klikli_dev.occultism.common.misc.StackPalette;
 import net.minecraft.item.ItemStack;
 
 import java.util.List;
@@ -31,6 +32,35 @@ public interface IStorageControllerGui {
     //region Getter / Setter
     void setStacks(List<ItemStack> stacks);
 
+    /**
+     * Applies a delta update to the current stacks.
+     *
+     * @param changedStacks the stacks with their new total amount.
+     * @param removedStacks the stacks that are no longer available.
+     */
+    void updateStacks(List<ItemStack> changedStacks, List<ItemStack> removedStacks);
+
+    /**
+     * Sets the stacks of a server evaluated view, these are already filtered and sorted.
+     *
+     * @param stacks the stacks to display.
+     * @param start  the index of the first stack within all stacks matching the view.
+     * @param total  the amount of stacks matching the view.
+     */
+    void setStackView(List<ItemStack> stacks, int start, int total);
+
+    /**
+     * @return the storage controller stacks version currently displayed, -1 if none was received yet.
+     */
+    long getStacksVersion();
+
+    void setStacksVersion(long version);
+
+    /**
+     * @return the stack palette received from the storage controller.
+     */
+    StackPalette getStackPalette();
+
     void setUsedSlots(int slots);
 
     void setMaxSlots(int slots);
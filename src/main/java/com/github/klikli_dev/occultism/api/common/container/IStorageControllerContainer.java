@@ -23,6 +23,7 @@
 package com.github.klikli_dev.occultism.api.common.container;
 
 import com.github.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.github.klikli_dev.occultism.api.common.data.StorageView;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
 import net.minecraft.inventory.CraftingInventory;
 import net.minecraft.inventory.Inventory;
@@ -41,6 +42,36 @@ public interface IStorageControllerContainer {
      * @return true if this is an item based access to the controller, false if it is a block.
      */
     boolean isContainerItem();
+
+    /**
+     * @return the storage controller stacks version last sent to the client of this container, -1 if none was sent.
+     */
+    long getStacksVersion();
+
+    void setStacksVersion(long version);
+
+    /**
+     * @return the epoch of the storage controller stack palette the client of this container has, -1 if none.
+     */
+    int getPaletteEpoch();
+
+    /**
+     * @return the amount of palette entries the client of this container has.
+     */
+    int getPaletteSize();
+
+    /**
+     * @param epoch the epoch of the palette the client has.
+     * @param size  the amount of palette entries the client has.
+     */
+    void setPalette(int epoch, int size);
+
+    /**
+     * @return the view the client of this container displays, null if the client receives all stacks.
+     */
+    StorageView getStorageView();
+
+    void setStorageView(StorageView view);
     //endregion Getter / Setter
 
     //region Methods
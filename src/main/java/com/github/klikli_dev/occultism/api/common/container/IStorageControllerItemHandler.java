@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.api.common.container;
+
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.common.util.INBTSerializable;
+import net.minecraftforge.items.IItemHandler;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Item storage backend of a storage controller.
+ * Storage controllers only work with items by key, the slots of the item handler are exposed for compatibility.
+ */
+public interface IStorageControllerItemHandler extends IItemHandler, INBTSerializable<CompoundNBT> {
+
+    //region Getter / Setter
+
+    /**
+     * Sets the storage capacity. Depending on the backend this is the amount of stacks or of item types.
+     *
+     * @param size the new capacity.
+     */
+    void setSize(int size);
+
+    /**
+     * @return the used up capacity, in the same unit as setSize.
+     */
+    int getUsedSlots();
+
+    /**
+     * Gets the total amount stored for the given key.
+     *
+     * @param key the key to count.
+     * @return the total amount.
+     */
+    long getCount(ItemStackKey key);
+
+    /**
+     * @return the total amount stored per key. Do not modify!
+     */
+    Map<ItemStackKey, Long> getTotals();
+    //endregion Getter / Setter
+
+    //region Methods
+
+    /**
+     * Gets all keys that could match the given comparator.
+     *
+     * @param comparator the comparator to get candidates for.
+     * @return the candidate keys, callers still need to test them against the comparator.
+     */
+    Collection<ItemStackKey> getCandidateKeys(Predicate<ItemStack> comparator);
+
+    /**
+     * Finds the first stored key matching the given comparator.
+     *
+     * @param comparator the comparator to match against.
+     * @return the matching key or null.
+     */
+    default ItemStackKey findKey(Predicate<ItemStack> comparator) {
+        for (ItemStackKey key : this.getCandidateKeys(comparator)) {
+            if (comparator.test(key.getPrototype()))
+                return key;
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the given stack wherever it fits.
+     *
+     * @param stack    the stack to insert.
+     * @param simulate true to simulate.
+     * @return the remainder that could not be inserted.
+     */
+    @Nonnull
+    ItemStack insertItemIndexed(@Nonnull ItemStack stack, boolean simulate);
+
+    /**
+     * Extracts up to the given amount of the given key.
+     *
+     * @param key      the key to extract.
+     * @param amount   the amount to extract.
+     * @param simulate true to simulate.
+     * @return the amount extracted.
+     */
+    int extractItemIndexed(ItemStackKey key, int amount, boolean simulate);
+
+    /**
+     * Gets and resets the keys whose total amount may have changed since the last call.
+     *
+     * @return the changed keys.
+     */
+    Set<ItemStackKey> pollChangedKeys();
+    //endregion Methods
+}
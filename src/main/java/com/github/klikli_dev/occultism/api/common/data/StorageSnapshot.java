@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.api.common.data;
+
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the contents of a storage controller at a given stacks version.
+ * Snapshots are shared by all readers and may be read from any thread. The stacks are created once per snapshot,
+ * readers must not modify them.
+ */
+public class StorageSnapshot {
+
+    //region Fields
+    protected final long version;
+    protected final Map<ItemStackKey, Long> totals;
+    protected final long totalCount;
+    protected volatile List<ItemStack> stacks;
+    //endregion Fields
+
+    //region Initialization
+
+    /**
+     * @param version the stacks version of the contents.
+     * @param totals  the stored amount per key, copied.
+     */
+    public StorageSnapshot(long version, Map<ItemStackKey, Long> totals) {
+        this.version = version;
+        this.totals = Collections.unmodifiableMap(new LinkedHashMap<>(totals));
+        long totalCount = 0;
+        for (long count : this.totals.values()) {
+            totalCount += count;
+        }
+        this.totalCount = totalCount;
+    }
+    //endregion Initialization
+
+    //region Getter / Setter
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the stored amount per key.
+     */
+    public Map<ItemStackKey, Long> getTotals() {
+        return this.totals;
+    }
+
+    /**
+     * @return the total amount of items stored.
+     */
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public boolean isEmpty() {
+        return this.totals.isEmpty();
+    }
+
+    /**
+     * @return one stack per key with the stored amount, clamped to int. Created on first access. Do not modify!
+     */
+    public List<ItemStack> getStacks() {
+        List<ItemStack> stacks = this.stacks;
+        if (stacks == null) {
+            //concurrent first readers may both build the list, they are equal and only one is kept.
+            List<ItemStack> result = new ArrayList<>(this.totals.size());
+            for (Map.Entry<ItemStackKey, Long> entry : this.totals.entrySet()) {
+                result.add(entry.getKey().createStack(entry.getValue()));
+            }
+            stacks = Collections.unmodifiableList(result);
+            this.stacks = stacks;
+        }
+        return stacks;
+    }
+    //endregion Getter / Setter
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.api.common.data;
+
+import net.minecraft.network.PacketBuffer;
+
+import java.util.Objects;
+
+/**
+ * Describes the part of the storage controller contents a client wants to display.
+ * Search, sort and paging are evaluated on the server, so only the visible stacks are sent.
+ */
+public class StorageView {
+    //region Fields
+    public static final int MAX_SEARCH_LENGTH = 30;
+    public static final int MAX_COUNT = 256;
+
+    public String searchText;
+    public SortType sortType;
+    public SortDirection sortDirection;
+    /**
+     * The index of the first stack to send, within the filtered and sorted stacks.
+     */
+    public int start;
+    public int count;
+    //endregion Fields
+
+    //region Initialization
+    public StorageView(String searchText, SortType sortType, SortDirection sortDirection, int start, int count) {
+        this.searchText = searchText;
+        this.sortType = sortType;
+        this.sortDirection = sortDirection;
+        this.start = start;
+        this.count = count;
+    }
+    //endregion Initialization
+
+    //region Overrides
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof StorageView))
+            return false;
+        StorageView other = (StorageView) obj;
+        return this.start == other.start && this.count == other.count && this.sortType == other.sortType &&
+                this.sortDirection == other.sortDirection && Objects.equals(this.searchText, other.searchText);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.searchText, this.sortType, this.sortDirection, this.start, this.count);
+    }
+    //endregion Overrides
+
+    //region Static Methods
+    public static StorageView from(PacketBuffer buf) {
+        String searchText = buf.readUtf(MAX_SEARCH_LENGTH);
+        SortType sortType = SortType.get(buf.readByte());
+        SortDirection sortDirection = SortDirection.get(buf.readByte());
+        int start = buf.readVarInt();
+        int count = buf.readVarInt();
+        //do not trust the client with the size of the answer
+        return new StorageView(searchText, sortType == null ? SortType.AMOUNT : sortType,
+                sortDirection == null ? SortDirection.DOWN : sortDirection, Math.max(0, start),
+                Math.max(0, Math.min(count, MAX_COUNT)));
+    }
+    //endregion Static Methods
+
+    //region Methods
+    public void encode(PacketBuffer buf) {
+        buf.writeUtf(this.searchText, MAX_SEARCH_LENGTH);
+        buf.writeByte(this.sortType.getValue());
+        buf.writeByte(this.sortDirection.getValue());
+        buf.writeVarInt(this.start);
+        buf.writeVarInt(this.count);
+    }
+    //endregion Methods
+}
@@ -25,6 +25,9 @@ package com.github.klikli_dev.occultism.api.common.tile;
 import com.github.klikli_dev.occultism.api.common.container.IItemStackComparator;
 import com.github.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.github.klikli_dev.occultism.api.common.data.MachineReference;
+import com.github.klikli_dev.occultism.api.common.data.StorageSnapshot;
+import com.github.klikli_dev.occultism.api.common.data.StorageView;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetrics;
 import com.github.klikli_dev.occultism.network.MessageUpdateStacks;
 import net.minecraft.item.ItemStack;
 
@@ -33,17 +36,32 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.function.Predicate;
 
-public interface IStorageController {
+public interface IStorageController extends IStorageControllerBulkAccess {
     //region Getter / Setter
 
     /**
-     * Gets a list of all stacks in the storage controller. Use sparingly!
-     * This list can be large and thus cause a lot of network traffic as well as performance issues in collecting it.
+     * Gets a list of all stacks in the storage controller.
+     * The list is taken from the current snapshot, so it is shared with other readers. Do not modify!
      *
      * @return all stacks available in the storage controller.
      */
     List<ItemStack> getStacks();
 
+    /**
+     * Gets an immutable snapshot of the current contents. Snapshots are rebuilt at most once per stacks version and
+     * shared by all readers, prefer this over iterating the item handler.
+     *
+     * @return the current snapshot.
+     */
+    StorageSnapshot getSnapshot();
+
+    /**
+     * Gets the operation counters of this storage controller.
+     *
+     * @return the metrics.
+     */
+    StorageControllerMetrics getMetrics();
+
     /**
      * Gets a message to update stacks, re-uses cached messages whenever possible
      *
@@ -51,6 +69,29 @@ public interface IStorageController {
      */
     MessageUpdateStacks getMessageUpdateStacks();
 
+    /**
+     * Gets a message containing only the stacks that changed since the given version.
+     * Falls back to a full snapshot if the changes since that version are no longer known.
+     *
+     * @param sinceVersion the stacks version the receiver already has, -1 for a full snapshot.
+     * @param paletteEpoch the stack palette epoch the receiver has, -1 if none.
+     * @param paletteSize  the amount of stack palette entries the receiver has.
+     * @return the stack update message, or null if the receiver is already up to date.
+     */
+    MessageUpdateStacks getMessageUpdateStacks(long sinceVersion, int paletteEpoch, int paletteSize);
+
+    /**
+     * Gets a message containing only the stacks matching the given view, filtered, sorted and paged on the server.
+     *
+     * @param view         the view to evaluate.
+     * @param sinceVersion the stacks version the receiver already has for this view, -1 to always send.
+     * @param paletteEpoch the stack palette epoch the receiver has, -1 if none.
+     * @param paletteSize  the amount of stack palette entries the receiver has.
+     * @return the stack update message, or null if the receiver is already up to date.
+     */
+    MessageUpdateStacks getMessageUpdateStackView(StorageView view, long sinceVersion, int paletteEpoch,
+                                                  int paletteSize);
+
     /**
      * @return the max slots available in this storage controller.
      */
@@ -62,7 +103,7 @@ public interface IStorageController {
     void setMaxSlots(int slots);
 
     /**
-     * @return the used up slots. Usually lazily updated when calling getStacks.
+     * @return the used up slots.
      */
     int getUsedSlots();
 
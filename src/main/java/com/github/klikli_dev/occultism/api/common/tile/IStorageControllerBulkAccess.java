@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.api.common.tile;
+
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import net.minecraft.item.ItemStack;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk item access to a storage controller for automation (import/export buses, pipes).
+ * Exposed as a separate capability, see {@link com.github.klikli_dev.occultism.registry.OccultismCapabilities#STORAGE_CONTROLLER_BULK_ACCESS}.
+ * All operations work on item keys and do not iterate the slots of the controller.
+ */
+public interface IStorageControllerBulkAccess {
+    //region Methods
+
+    /**
+     * Inserts all given stacks into the controller.
+     *
+     * @param stacks   the stacks to insert. Not modified.
+     * @param simulate true to simulate.
+     * @return the remainders that could not be inserted, in the same order and size as the given stacks.
+     */
+    @Nonnull
+    List<ItemStack> insertStacks(@Nonnull List<ItemStack> stacks, boolean simulate);
+
+    /**
+     * Extracts up to the given amount of the given key. The amount is not limited to the max stack size.
+     *
+     * @param key      the key to extract.
+     * @param amount   the amount to extract.
+     * @param simulate true to simulate.
+     * @return the amount extracted, use {@link ItemStackKey#createStack(long)} to create stacks from it.
+     */
+    long extractItems(@Nonnull ItemStackKey key, long amount, boolean simulate);
+
+    /**
+     * Gets the stored amounts for the given keys.
+     *
+     * @param keys the keys to count.
+     * @return the stored amount per requested key, 0 for keys not stored.
+     */
+    @Nonnull
+    Map<ItemStackKey, Long> getCounts(@Nonnull Collection<ItemStackKey> keys);
+
+    /**
+     * Gets the stored amounts of all keys, for callers that need to match against everything in one pass.
+     *
+     * @return the stored amount per key, an immutable snapshot of the current contents.
+     */
+    @Nonnull
+    Map<ItemStackKey, Long> getTotals();
+    //endregion Methods
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.client.gui.storage;
+
+import com.github.klikli_dev.occultism.api.common.data.SortDirection;
+import com.github.klikli_dev.occultism.api.common.data.SortType;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.github.klikli_dev.occultism.util.TextUtil;
+import net.minecraft.item.ItemStack;
+
+import java.util.*;
+
+/**
+ * The stacks shown in the storage controller gui, kept in display order.
+ * Sort keys are computed once per item, changed stacks are moved to their new position by binary search instead of
+ * sorting all stacks again. Stacks that compare equal keep the order in which they first arrived.
+ */
+public class SortedStackList {
+
+    //region Fields
+    protected Map<ItemStackKey, Entry> entries = new HashMap<>();
+    protected List<Entry> sorted = new ArrayList<>();
+    protected List<ItemStack> stacks = new AbstractList<ItemStack>() {
+        @Override
+        public ItemStack get(int index) {
+            return SortedStackList.this.sorted.get(index).stack;
+        }
+
+        @Override
+        public int size() {
+            return SortedStackList.this.sorted.size();
+        }
+    };
+    protected SortType sortType = SortType.AMOUNT;
+    protected SortDirection sortDirection = SortDirection.DOWN;
+    protected Comparator<Entry> comparator = createComparator(this.sortType, this.sortDirection);
+    protected long nextSequence;
+    /**
+     * Incremented on every change of the contents or order.
+     */
+    protected long version;
+    //endregion Fields
+
+    //region Getter / Setter
+
+    /**
+     * @return a live view of the stacks in display order. Do not modify!
+     */
+    public List<ItemStack> getStacks() {
+        return this.stacks;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Sets the display order, only sorts if the order actually changed.
+     *
+     * @param sortType      the sort type.
+     * @param sortDirection the sort direction.
+     */
+    public void setSortOrder(SortType sortType, SortDirection sortDirection) {
+        if (sortType == this.sortType && sortDirection == this.sortDirection)
+            return;
+        this.sortType = sortType;
+        this.sortDirection = sortDirection;
+        this.comparator = createComparator(sortType, sortDirection);
+        this.sorted.sort(this.comparator);
+        this.version++;
+    }
+    //endregion Getter / Setter
+
+    //region Static Methods
+    protected static Comparator<Entry> createComparator(SortType sortType, SortDirection sortDirection) {
+        int direction = sortDirection.isDown() ? -1 : 1;
+        Comparator<Entry> comparator;
+        switch (sortType) {
+            case NAME:
+                comparator = (a, b) -> a.name.compareTo(b.name) * direction;
+                break;
+            case MOD:
+                comparator = (a, b) -> a.modName.compareTo(b.modName) * direction;
+                break;
+            default:
+                comparator = (a, b) -> Integer.compare(b.count, a.count) * direction;
+                break;
+        }
+        //a total order is required for binary search, so ties are broken by arrival
+        return comparator.thenComparingLong(entry -> entry.sequence);
+    }
+    //endregion Static Methods
+
+    //region Methods
+
+    /**
+     * Replaces all stacks.
+     *
+     * @param stacks the new stacks.
+     */
+    public void setAll(Collection<ItemStack> stacks) {
+        this.entries.clear();
+        this.sorted.clear();
+        for (ItemStack stack : stacks) {
+            ItemStackKey key = ItemStackKey.of(stack);
+            Entry entry = new Entry(key, stack, this.nextSequence++);
+            Entry previous = this.entries.put(key, entry);
+            if (previous != null)
+                this.sorted.remove(previous);
+            this.sorted.add(entry);
+        }
+        this.sorted.sort(this.comparator);
+        this.version++;
+    }
+
+    /**
+     * Adds the given stack, or replaces the stack with the same key and moves it to its new position.
+     *
+     * @param key   the key of the stack.
+     * @param stack the stack.
+     */
+    public void put(ItemStackKey key, ItemStack stack) {
+        Entry previous = this.entries.get(key);
+        Entry entry;
+        if (previous != null) {
+            this.sorted.remove(Collections.binarySearch(this.sorted, previous, this.comparator));
+            entry = new Entry(previous, stack);
+        } else {
+            entry = new Entry(key, stack, this.nextSequence++);
+        }
+        this.entries.put(key, entry);
+        int index = Collections.binarySearch(this.sorted, entry, this.comparator);
+        this.sorted.add(-index - 1, entry);
+        this.version++;
+    }
+
+    public void remove(ItemStackKey key) {
+        Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.sorted.remove(Collections.binarySearch(this.sorted, entry, this.comparator));
+            this.version++;
+        }
+    }
+
+    public void clear() {
+        this.entries.clear();
+        this.sorted.clear();
+        this.version++;
+    }
+
+    /**
+     * Gets the stacks with the given keys, in display order.
+     *
+     * @param keys the keys to include.
+     * @return the matching stacks.
+     */
+    public List<ItemStack> filter(Set<ItemStackKey> keys) {
+        List<ItemStack> result = new ArrayList<>(Math.min(keys.size(), this.sorted.size()));
+        for (Entry entry : this.sorted) {
+            if (keys.contains(entry.key))
+                result.add(entry.stack);
+        }
+        return result;
+    }
+    //endregion Methods
+
+    /**
+     * Immutable while in the list, changed stacks get a new entry so the sorted order stays valid.
+     */
+    protected static class Entry {
+        //region Fields
+        protected final ItemStackKey key;
+        protected final ItemStack stack;
+        protected final int count;
+        protected final String name;
+        protected final String modName;
+        protected final long sequence;
+        //endregion Fields
+
+        //region Initialization
+        protected Entry(ItemStackKey key, ItemStack stack, long sequence) {
+            this.key = key;
+            this.stack = stack;
+            this.count = stack.getCount();
+            this.name = stack.getHoverName().getString().toLowerCase();
+            String modName = TextUtil.getModNameForGameObject(stack.getItem());
+            this.modName = modName == null ? "" : modName.toLowerCase();
+            this.sequence = sequence;
+        }
+
+        /**
+         * Creates an entry for a changed stack of the same item, re-using the sort keys of the previous entry.
+         */
+        protected Entry(Entry previous, ItemStack stack) {
+            this.key = previous.key;
+            this.stack = stack;
+            this.count = stack.getCount();
+            this.name = previous.name;
+            this.modName = previous.modName;
+            this.sequence = previous.sequence;
+        }
+        //endregion Initialization
+    }
+}
@@ -32,12 +32,13 @@ import com.github.klikli_dev.occultism.client.gui.controls.LabelWidget;
 import com.github.klikli_dev.occultism.client.gui.controls.MachineSlotWidget;
 import com.github.klikli_dev.occultism.client.gui.controls.SizedImageButton;
 import com.github.klikli_dev.occultism.common.container.storage.StorageControllerContainerBase;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.github.klikli_dev.occultism.common.misc.StackPalette;
 import com.github.klikli_dev.occultism.integration.jei.JeiAccess;
 import com.github.klikli_dev.occultism.integration.jei.JeiSettings;
 import com.github.klikli_dev.occultism.network.*;
 import com.github.klikli_dev.occultism.util.InputUtil;
 import com.github.klikli_dev.occultism.util.TextUtil;
-import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
@@ -47,7 +48,6 @@ import net.minecraft.client.gui.screen.inventory.ContainerScreen;
 import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.client.gui.widget.button.Button;
 import net.minecraft.client.resources.I18n;
-import net.minecraft.client.util.ITooltipFlag;
 import net.minecraft.client.util.InputMappings;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.IInventory;
@@ -65,8 +65,8 @@ import net.minecraft.world.World;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public abstract class StorageControllerGuiBase<T extends StorageControllerContainerBase> extends ContainerScreen<T> implements IStorageControllerGui, IStorageControllerGuiContainer, IInventoryChangedListener {
     //region Fields
@@ -76,6 +76,33 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     protected static final ResourceLocation BUTTONS = new ResourceLocation(Occultism.MODID, "textures/gui/buttons.png");
     protected static final String TRANSLATION_KEY_BASE = "gui." + Occultism.MODID + ".storage_controller";
     public List<ItemStack> stacks;
+    /**
+     * The same stacks as in stacks in display order, delta updates are applied to it.
+     */
+    protected SortedStackList sortedStacks = new SortedStackList();
+    protected StorageSearchIndex searchIndex = new StorageSearchIndex();
+    /**
+     * The filtered and sorted stacks last displayed, re-used until the stacks, search or sort order change.
+     */
+    protected List<ItemStack> stacksToDisplay;
+    protected long stacksToDisplayVersion = -1;
+    protected String stacksToDisplaySearchText;
+    /**
+     * The stacks and page the item slots were last built for, they are only rebuilt if either changes.
+     */
+    protected List<ItemStack> itemSlotsStacks;
+    protected int itemSlotsPage;
+    protected long stacksVersion = -1;
+    protected StackPalette stackPalette = new StackPalette();
+    /**
+     * The index of the first stack in stacks within the server evaluated view.
+     */
+    protected int viewStart;
+    protected int viewTotal;
+    /**
+     * The view start last requested from the server, -1 if no view was requested yet.
+     */
+    protected int requestedViewStart = -1;
     public List<MachineReference> linkedMachines;
     public IStorageControllerContainer storageControllerContainer;
     public int usedSlots;
@@ -124,7 +151,9 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
 
         this.lastClick = System.currentTimeMillis();
 
-        OccultismPackets.sendToServer(new MessageRequestStacks());
+        //server views depend on the sort settings that are not yet available, they are requested in init.
+        if (!this.usesServerView())
+            OccultismPackets.sendToServer(new MessageRequestStacks());
     }
     //endregion Initialization
 
@@ -185,7 +214,55 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
 
     @Override
     public void setStacks(List<ItemStack> stacks) {
+        if (this.usesServerView())
+            return;
+        this.sortedStacks.setAll(stacks);
+        this.stacks = this.sortedStacks.getStacks();
+        this.searchIndex.clear();
+        for (ItemStack stack : stacks) {
+            this.searchIndex.put(ItemStackKey.of(stack), stack);
+        }
+    }
+
+    @Override
+    public void updateStacks(List<ItemStack> changedStacks, List<ItemStack> removedStacks) {
+        if (this.usesServerView())
+            return;
+        for (ItemStack stack : removedStacks) {
+            ItemStackKey key = ItemStackKey.of(stack);
+            this.sortedStacks.remove(key);
+            this.searchIndex.remove(key);
+        }
+        for (ItemStack stack : changedStacks) {
+            ItemStackKey key = ItemStackKey.of(stack);
+            this.sortedStacks.put(key, stack);
+            this.searchIndex.put(key, stack);
+        }
+        this.stacks = this.sortedStacks.getStacks();
+    }
+
+    @Override
+    public void setStackView(List<ItemStack> stacks, int start, int total) {
         this.stacks = stacks;
+        this.sortedStacks.clear();
+        this.searchIndex.clear();
+        this.viewStart = start;
+        this.viewTotal = total;
+    }
+
+    @Override
+    public long getStacksVersion() {
+        return this.stacksVersion;
+    }
+
+    @Override
+    public void setStacksVersion(long version) {
+        this.stacksVersion = version;
+    }
+
+    @Override
+    public StackPalette getStackPalette() {
+        return this.stackPalette;
     }
 
     @Override
@@ -213,6 +290,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         super.init();
         this.leftPos = (this.width - this.imageWidth) / 2 - ORDER_AREA_OFFSET;
         this.topPos = (this.height - this.imageHeight) / 2;
+        //slot positions depend on the gui position
+        this.itemSlotsStacks = null;
 
         this.buttons.clear();
 
@@ -251,6 +330,9 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
                 .addLine(I18n.get(TRANSLATION_KEY_BASE + ".space_info_label", this.usedSlots, this.maxSlots), false);
         this.addButton(this.storageSpaceLabel);
         this.initButtons();
+
+        if (this.usesServerView() && this.requestedViewStart < 0)
+            this.requestStacks();
     }
 
     @Override
@@ -368,6 +450,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     @Override
     public boolean keyPressed(int keyCode, int scanCode, int p_keyPressed_3_) {
         if (this.searchBar.isFocused() && this.searchBar.keyPressed(keyCode, scanCode, p_keyPressed_3_)) {
+            if (this.usesServerView())
+                this.requestStacks();
             if (JeiSettings.isJeiLoaded() && JeiSettings.isJeiSearchSynced()) {
                 JeiAccess.setFilterText(this.searchBar.getValue());
             }
@@ -417,7 +501,7 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     @Override
     public boolean charTyped(char typedChar, int keyCode) {
         if (this.searchBar.isFocused() && this.searchBar.charTyped(typedChar, keyCode)) {
-            OccultismPackets.sendToServer(new MessageRequestStacks());
+            this.requestStacks();
             if (JeiSettings.isJeiLoaded() && JeiSettings.isJeiSearchSynced()) {
                 JeiAccess.setFilterText(this.searchBar.getValue());
             }
@@ -437,7 +521,7 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
                 this.topPos + clearRecipeButtonTop, controlButtonSize, controlButtonSize, 0, 196, 28, 28, 28, 256, 256,
                 BUTTONS, (button) -> {
             OccultismPackets.sendToServer(new MessageClearCraftingMatrix());
-            OccultismPackets.sendToServer(new MessageRequestStacks());
+            this.requestStacks();
             this.init();
         });
         this.addButton(this.clearRecipeButton);
@@ -449,6 +533,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
                 this.topPos + controlButtonTop, controlButtonSize, controlButtonSize, 0, 196, 28, 28, 28, 256, 256,
                 BUTTONS, (button) -> {
             this.clearSearch();
+            if (this.usesServerView())
+                this.requestStacks();
             this.forceFocus = true;
             this.init();
         });
@@ -462,6 +548,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
             this.setSortType(this.getSortType().next());
             OccultismPackets.sendToServer(
                     new MessageSortItems(this.getEntityPosition(), this.getSortDirection(), this.getSortType()));
+            if (this.usesServerView())
+                this.requestStacks();
             this.init();
         });
         this.addButton(this.sortTypeButton);
@@ -474,6 +562,8 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
             this.setSortDirection(this.getSortDirection().next());
             OccultismPackets.sendToServer(
                     new MessageSortItems(this.getEntityPosition(), this.getSortDirection(), this.getSortType()));
+            if (this.usesServerView())
+                this.requestStacks();
             this.init();
         });
         this.addButton(this.sortDirectionButton);
@@ -537,10 +627,17 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected void drawItems(MatrixStack matrixStack, float partialTicks, int mouseX, int mouseY) {
-        List<ItemStack> stacksToDisplay = this.applySearchToItems();
-        this.sortItemStacks(stacksToDisplay);
-        this.buildPage(stacksToDisplay);
-        this.buildItemSlots(stacksToDisplay);
+        if (this.usesServerView()) {
+            //the server already filtered and sorted, we only need to request a new view if we scrolled.
+            this.buildPage(this.viewTotal);
+            if (this.requestedViewStart >= 0 && this.requestedViewStart != (this.currentPage - 1) * this.columns)
+                this.requestStacks();
+            this.buildItemSlotsIfChanged(this.stacks, this.viewStart);
+        } else {
+            List<ItemStack> stacksToDisplay = this.getStacksToDisplay();
+            this.buildPage(stacksToDisplay);
+            this.buildItemSlotsIfChanged(stacksToDisplay, 0);
+        }
         this.drawItemSlots(matrixStack, mouseX, mouseY);
     }
 
@@ -660,12 +757,40 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected void buildItemSlots(List<ItemStack> stacksToDisplay) {
+        this.buildItemSlots(stacksToDisplay, 0);
+    }
+
+    /**
+     * Builds the item slots for the current page, unless they were already built for the same stacks and page.
+     *
+     * @param stacksToDisplay the stacks to display, a new list instance is expected whenever the contents change.
+     * @param firstIndex      the index of the first stack in stacksToDisplay within all stacks to display.
+     */
+    protected void buildItemSlotsIfChanged(List<ItemStack> stacksToDisplay, int firstIndex) {
+        if (stacksToDisplay == this.itemSlotsStacks && this.currentPage == this.itemSlotsPage)
+            return;
+        this.buildItemSlots(stacksToDisplay, firstIndex);
+        this.itemSlotsStacks = stacksToDisplay;
+        this.itemSlotsPage = this.currentPage;
+    }
+
+    /**
+     * Builds the item slots for the current page.
+     *
+     * @param stacksToDisplay the stacks to display.
+     * @param firstIndex      the index of the first stack in stacksToDisplay within all stacks to display.
+     */
+    protected void buildItemSlots(List<ItemStack> stacksToDisplay, int firstIndex) {
 
         int itemAreaLeft = 8 + ORDER_AREA_OFFSET;
         int itemAreaTop = 24;
 
         this.itemSlots = new ArrayList<>();
-        int index = (this.currentPage - 1) * (this.columns);
+        int index = (this.currentPage - 1) * (this.columns) - firstIndex;
+        if (index < 0) {
+            //the view we received does not cover the current page yet
+            return;
+        }
         for (int row = 0; row < this.rows; row++) {
             if (index >= stacksToDisplay.size()) {
                 break;
@@ -685,8 +810,12 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
     }
 
     protected void buildPage(List<?> objectsToDisplay) {
-        this.totalPages = objectsToDisplay.size() / this.columns;
-        if (objectsToDisplay.size() % this.columns != 0) {
+        this.buildPage(objectsToDisplay.size());
+    }
+
+    protected void buildPage(int objectCount) {
+        this.totalPages = objectCount / this.columns;
+        if (objectCount % this.columns != 0) {
             this.totalPages++;
         }
         this.totalPages -= (this.rows - 1);
@@ -701,46 +830,31 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         }
     }
 
-    protected void sortItemStacks(List<ItemStack> stacksToDisplay) {
-        stacksToDisplay.sort(new Comparator<ItemStack>() {
-
-            //region Fields
-            final int direction = StorageControllerGuiBase.this.getSortDirection().isDown() ? -1 : 1;
-            //endregion Fields
-
-            //region Overrides
-            @Override
-            public int compare(ItemStack a, ItemStack b) {
-                switch (StorageControllerGuiBase.this.getSortType()) {
-                    case AMOUNT:
-                        return Integer.compare(b.getCount(), a.getCount()) * this.direction;
-                    case NAME:
-                        return a.getHoverName().getContents()
-                                .compareToIgnoreCase(b.getHoverName().getContents()) *
-                                this.direction;
-                    case MOD:
-                        return TextUtil.getModNameForGameObject(a.getItem())
-                                .compareToIgnoreCase(TextUtil.getModNameForGameObject(b.getItem())) *
-                                this.direction;
-                }
-                return 0;
-            }
-            //endregion Overrides
-        });
+    /**
+     * Gets the filtered and sorted stacks to display. The result is cached until the stacks, the search text or the
+     * sort order change, so rendering does not filter or sort again every frame.
+     *
+     * @return the stacks to display. Do not modify!
+     */
+    protected List<ItemStack> getStacksToDisplay() {
+        this.sortedStacks.setSortOrder(this.getSortType(), this.getSortDirection());
+        String searchText = this.searchBar.getValue();
+        if (this.stacksToDisplay == null || this.stacksToDisplayVersion != this.sortedStacks.getVersion() ||
+                !searchText.equals(this.stacksToDisplaySearchText)) {
+            this.stacksToDisplay = this.applySearchToItems();
+            this.stacksToDisplayVersion = this.sortedStacks.getVersion();
+            this.stacksToDisplaySearchText = searchText;
+        }
+        return this.stacksToDisplay;
     }
 
     protected List<ItemStack> applySearchToItems() {
         String searchText = this.searchBar.getValue();
 
         if (!searchText.equals("")) {
-            List<ItemStack> stacksToDisplay = new ArrayList<>();
-            for (ItemStack stack : this.stacks) {
-                if (this.itemMatchesSearch(stack))
-                    stacksToDisplay.add(stack);
-            }
-            return stacksToDisplay;
+            return this.sortedStacks.filter(new HashSet<>(this.searchIndex.search(searchText, this.minecraft.player)));
         }
-        return new ArrayList<>(this.stacks);
+        return new ArrayList<>(this.sortedStacks.getStacks());
     }
 
     protected List<MachineReference> applySearchToMachines() {
@@ -758,30 +872,6 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         return new ArrayList<>(this.linkedMachines);
     }
 
-    protected boolean itemMatchesSearch(ItemStack stack) {
-        String searchText = this.searchBar.getValue();
-        if (searchText.startsWith("@")) {
-            String name = TextUtil.getModNameForGameObject(stack.getItem());
-            return name.toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else if (searchText.startsWith("#")) {
-            List<String> tooltip = stack.getTooltipLines(this.minecraft.player, ITooltipFlag.TooltipFlags.NORMAL).stream()
-                    .map(ITextComponent::getString).collect(
-                            Collectors.toList());
-            String tooltipString = Joiner.on(' ').join(tooltip).toLowerCase().trim();
-            return tooltipString.toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else if (searchText.startsWith("$")) {
-            StringBuilder tagStringBuilder = new StringBuilder();
-            for (ResourceLocation tag : stack.getItem().getTags()) {
-                tagStringBuilder.append(tag.toString()).append(' ');
-            }
-            return tagStringBuilder.toString().toLowerCase().contains(searchText.toLowerCase().substring(1));
-        } else {
-            //Note: If search stops working, forge may have re-implemented .getUnformattedComponentText() for translated text components
-            return stack.getHoverName().getString().toLowerCase()
-                    .contains(searchText.toLowerCase());
-        }
-    }
-
     protected boolean machineMatchesSearch(MachineReference machine) {
         String searchText = this.searchBar.getValue();
         if (searchText.startsWith("@")) {
@@ -858,6 +948,29 @@ public abstract class StorageControllerGuiBase<T extends StorageControllerContai
         }
     }
 
+    /**
+     * @return true if search, sort and paging are evaluated on the server.
+     */
+    protected boolean usesServerView() {
+        return Occultism.CLIENT_CONFIG.misc.serverSideStorageView.get();
+    }
+
+    /**
+     * Requests the stacks to display from the server. In server view mode only the visible stacks are requested.
+     */
+    protected void requestStacks() {
+        if (this.usesServerView()) {
+            this.requestedViewStart = (this.currentPage - 1) * this.columns;
+            OccultismPackets.sendToServer(new MessageRequestStacks(new StorageView(
+                    this.searchBar == null ? "" : this.searchBar.getValue(), this.getSortType(),
+                    this.getSortDirection(), this.requestedViewStart, this.rows * this.columns),
+                    this.stackPalette.getEpoch(), this.stackPalette.size()));
+        } else {
+            OccultismPackets.sendToServer(new MessageRequestStacks(this.stacksVersion,
+                    this.stackPalette.getEpoch(), this.stackPalette.size()));
+        }
+    }
+
     protected void clearSearch() {
         this.searchBar.setValue("");
         if (JeiSettings.isJeiLoaded() && JeiSettings.isJeiSearchSynced()) {
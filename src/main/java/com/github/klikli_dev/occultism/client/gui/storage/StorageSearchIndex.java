@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.client.gui.storage;
+
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.github.klikli_dev.occultism.util.TextUtil;
+import net.minecraft.client.util.ITooltipFlag;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.text.ITextComponent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search index for the storage controller gui.
+ * The searchable texts of each item are computed once when it arrives, the tooltip only when first searched.
+ * Typing more characters narrows the previous result instead of searching all items again.
+ */
+public class StorageSearchIndex {
+
+    //region Fields
+    protected Map<ItemStackKey, Entry> entries = new LinkedHashMap<>();
+    protected String lastSearchText;
+    protected List<Entry> lastResult;
+    //endregion Fields
+
+    //region Methods
+
+    /**
+     * Adds the given stack to the index, if it is not indexed yet.
+     *
+     * @param key   the key of the stack.
+     * @param stack the stack.
+     */
+    public void put(ItemStackKey key, ItemStack stack) {
+        if (!this.entries.containsKey(key)) {
+            this.entries.put(key, new Entry(key, stack));
+            this.lastResult = null;
+        }
+    }
+
+    public void remove(ItemStackKey key) {
+        if (this.entries.remove(key) != null)
+            this.lastResult = null;
+    }
+
+    public void clear() {
+        this.entries.clear();
+        this.lastResult = null;
+    }
+
+    /**
+     * Gets the keys of all indexed items matching the given search text.
+     *
+     * @param searchText the search text, supporting the @mod, #tooltip and $tag prefixes.
+     * @param player     the player to create tooltips for.
+     * @return the matching keys, in index order.
+     */
+    public List<ItemStackKey> search(String searchText, PlayerEntity player) {
+        String text = searchText.toLowerCase();
+        if (this.lastResult == null || !text.startsWith(this.lastSearchText)) {
+            this.lastResult = this.filter(this.entries.values(), text, player);
+        } else if (!text.equals(this.lastSearchText)) {
+            //everything matching the longer text also matched the previous text
+            this.lastResult = this.filter(this.lastResult, text, player);
+        }
+        this.lastSearchText = text;
+
+        List<ItemStackKey> result = new ArrayList<>(this.lastResult.size());
+        for (Entry entry : this.lastResult) {
+            result.add(entry.key);
+        }
+        return result;
+    }
+
+    protected List<Entry> filter(Collection<Entry> candidates, String text, PlayerEntity player) {
+        if (text.isEmpty())
+            return new ArrayList<>(candidates);
+
+        List<Entry> result = new ArrayList<>();
+        String term = text.substring(1);
+        for (Entry entry : candidates) {
+            boolean matches;
+            switch (text.charAt(0)) {
+                case '@':
+                    matches = entry.modName.contains(term);
+                    break;
+                case '#':
+                    matches = entry.getTooltip(player).contains(term);
+                    break;
+                case '$':
+                    matches = entry.tags.contains(term);
+                    break;
+                default:
+                    matches = entry.name.contains(text);
+                    break;
+            }
+            if (matches)
+                result.add(entry);
+        }
+        return result;
+    }
+    //endregion Methods
+
+    protected static class Entry {
+        //region Fields
+        protected final ItemStackKey key;
+        protected final String name;
+        protected final String modName;
+        protected final String tags;
+        protected String tooltip;
+        //endregion Fields
+
+        //region Initialization
+        protected Entry(ItemStackKey key, ItemStack stack) {
+            this.key = key;
+            //Note: If search stops working, forge may have re-implemented .getUnformattedComponentText() for translated text components
+            this.name = stack.getHoverName().getString().toLowerCase();
+            String modName = TextUtil.getModNameForGameObject(stack.getItem());
+            this.modName = modName == null ? "" : modName.toLowerCase();
+            StringBuilder tagStringBuilder = new StringBuilder();
+            for (ResourceLocation tag : stack.getItem().getTags()) {
+                tagStringBuilder.append(tag.toString()).append(' ');
+            }
+            this.tags = tagStringBuilder.toString().toLowerCase();
+        }
+        //endregion Initialization
+
+        //region Getter / Setter
+        protected String getTooltip(PlayerEntity player) {
+            if (this.tooltip == null) {
+                StringBuilder tooltipBuilder = new StringBuilder();
+                for (ITextComponent line : this.key.getPrototype()
+                        .getTooltipLines(player, ITooltipFlag.TooltipFlags.NORMAL)) {
+                    tooltipBuilder.append(line.getString()).append(' ');
+                }
+                this.tooltip = tooltipBuilder.toString().toLowerCase().trim();
+            }
+            return this.tooltip;
+        }
+        //endregion Getter / Setter
+    }
+}
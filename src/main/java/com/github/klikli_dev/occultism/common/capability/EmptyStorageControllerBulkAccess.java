@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.capability;
+
+import com.github.klikli_dev.occultism.api.common.tile.IStorageControllerBulkAccess;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import net.minecraft.item.ItemStack;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Default instance of {@link IStorageControllerBulkAccess}: stores nothing, accepts nothing.
+ */
+public class EmptyStorageControllerBulkAccess implements IStorageControllerBulkAccess {
+
+    //region Overrides
+    @Nonnull
+    @Override
+    public List<ItemStack> insertStacks(@Nonnull List<ItemStack> stacks, boolean simulate) {
+        List<ItemStack> remainders = new ArrayList<>(stacks.size());
+        for (ItemStack stack : stacks) {
+            remainders.add(stack.copy());
+        }
+        return remainders;
+    }
+
+    @Override
+    public long extractItems(@Nonnull ItemStackKey key, long amount, boolean simulate) {
+        return 0;
+    }
+
+    @Nonnull
+    @Override
+    public Map<ItemStackKey, Long> getCounts(@Nonnull Collection<ItemStackKey> keys) {
+        Map<ItemStackKey, Long> counts = new HashMap<>();
+        for (ItemStackKey key : keys) {
+            counts.put(key, 0L);
+        }
+        return counts;
+    }
+
+    @Nonnull
+    @Override
+    public Map<ItemStackKey, Long> getTotals() {
+        return Collections.emptyMap();
+    }
+    //endregion Overrides
+}
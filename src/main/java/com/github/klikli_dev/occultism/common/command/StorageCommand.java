@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.command;
+
+import com.github.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetricsRegistry;
+import com.github.klikli_dev.occultism.common.tile.StorageControllerTileEntity;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.arguments.BlockPosArgument;
+import net.minecraft.command.arguments.DimensionArgument;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.List;
+
+public class StorageCommand {
+
+    //region Fields
+    private static final int DEFAULT_STATS_LIMIT = 10;
+    //endregion Fields
+
+    //region Static Methods
+    public static ArgumentBuilder<CommandSource, ?> register(CommandDispatcher<CommandSource> dispatcher) {
+        return Commands.literal("storage")
+                .requires(cs -> cs.hasPermission(2))
+                .then(Commands.literal("stats")
+                        .executes(context -> listStats(context, DEFAULT_STATS_LIMIT))
+                        .then(Commands.argument("limit", IntegerArgumentType.integer(1, 100))
+                                .executes(context -> listStats(context, IntegerArgumentType.getInteger(context, "limit"))))
+                        .then(Commands.literal("reset")
+                                .executes(StorageCommand::resetStats)))
+                .then(Commands.literal("federation")
+                        .then(Commands.literal("list")
+                                .then(Commands.argument("hub", BlockPosArgument.blockPos())
+                                        .executes(StorageCommand::listMembers)))
+                        .then(Commands.literal("add")
+                                .then(Commands.argument("hub", BlockPosArgument.blockPos())
+                                        .then(Commands.argument("dimension", DimensionArgument.dimension())
+                                                .then(Commands.argument("member", BlockPosArgument.blockPos())
+                                                        .executes(StorageCommand::addMember)))))
+                        .then(Commands.literal("remove")
+                                .then(Commands.argument("hub", BlockPosArgument.blockPos())
+                                        .then(Commands.argument("dimension", DimensionArgument.dimension())
+                                                .then(Commands.argument("member", BlockPosArgument.blockPos())
+                                                        .executes(StorageCommand::removeMember))))));
+    }
+
+    public static int listStats(CommandContext<CommandSource> context, int limit) {
+        List<StorageControllerTileEntity> controllers = StorageControllerMetricsRegistry.getTop(limit);
+        context.getSource().sendSuccess(new StringTextComponent("Top " + controllers.size() + " of " +
+                StorageControllerMetricsRegistry.getControllerCount() + " loaded storage actuators by cost:"), false);
+        for (StorageControllerTileEntity controller : controllers) {
+            context.getSource().sendSuccess(new StringTextComponent(
+                    StorageControllerMetricsRegistry.describe(controller)), false);
+        }
+        return controllers.size();
+    }
+
+    public static int resetStats(CommandContext<CommandSource> context) {
+        StorageControllerMetricsRegistry.resetAll();
+        context.getSource().sendSuccess(new StringTextComponent("Storage actuator metrics reset."), true);
+        return 0;
+    }
+
+    public static int listMembers(CommandContext<CommandSource> context) throws CommandSyntaxException {
+        StorageControllerTileEntity hub = getHub(context);
+        if (hub == null)
+            return 0;
+        context.getSource().sendSuccess(new StringTextComponent(
+                "Federation members: " + hub.getFederationMembers().size()), false);
+        for (GlobalBlockPos member : hub.getFederationMembers()) {
+            context.getSource().sendSuccess(new StringTextComponent(" - " + member), false);
+        }
+        return hub.getFederationMembers().size();
+    }
+
+    public static int addMember(CommandContext<CommandSource> context) throws CommandSyntaxException {
+        StorageControllerTileEntity hub = getHub(context);
+        if (hub == null)
+            return 0;
+        ServerWorld memberWorld = DimensionArgument.getDimension(context, "dimension");
+        BlockPos memberPos = BlockPosArgument.getOrLoadBlockPos(context, "member");
+        TileEntity tileEntity = memberWorld.hasChunkAt(memberPos) ? memberWorld.getBlockEntity(memberPos) : null;
+        if (!(tileEntity instanceof StorageControllerTileEntity)) {
+            context.getSource().sendFailure(new StringTextComponent("No storage controller at " + memberPos));
+            return 0;
+        }
+        StorageControllerTileEntity member = (StorageControllerTileEntity) tileEntity;
+        //members are merged via their own storage, so nesting federations would silently drop items from view
+        if (!member.getFederationMembers().isEmpty()) {
+            context.getSource().sendFailure(new StringTextComponent("A federation hub cannot be added as member."));
+            return 0;
+        }
+        if (hub.getFederationHub() != null) {
+            context.getSource().sendFailure(new StringTextComponent("A federation member cannot have members."));
+            return 0;
+        }
+        GlobalBlockPos hubPos = hub.getLinkedStorageControllerPosition();
+        if (member.getFederationHub() != null && !member.getFederationHub().equals(hubPos)) {
+            context.getSource().sendFailure(new StringTextComponent("Storage controller is already part of another federation."));
+            return 0;
+        }
+        if (!hub.addFederationMember(GlobalBlockPos.from(member))) {
+            context.getSource().sendFailure(new StringTextComponent("Storage controller is already part of the federation."));
+            return 0;
+        }
+        member.setFederationHub(hubPos);
+        context.getSource().sendSuccess(new StringTextComponent("Added federation member " + GlobalBlockPos.from(member)), true);
+        return 1;
+    }
+
+    public static int removeMember(CommandContext<CommandSource> context) throws CommandSyntaxException {
+        StorageControllerTileEntity hub = getHub(context);
+        if (hub == null)
+            return 0;
+        ServerWorld memberWorld = DimensionArgument.getDimension(context, "dimension");
+        GlobalBlockPos member = new GlobalBlockPos(BlockPosArgument.getOrLoadBlockPos(context, "member"), memberWorld);
+        if (!hub.removeFederationMember(member)) {
+            context.getSource().sendFailure(new StringTextComponent("Storage controller is not part of the federation."));
+            return 0;
+        }
+        //unloaded members drop the stale hub once they are loaded and see it no longer lists them
+        TileEntity tileEntity = memberWorld.hasChunkAt(member.getPos()) ? memberWorld.getBlockEntity(member.getPos()) : null;
+        if (tileEntity instanceof StorageControllerTileEntity &&
+            hub.getLinkedStorageControllerPosition().equals(((StorageControllerTileEntity) tileEntity).getFederationHub()))
+            ((StorageControllerTileEntity) tileEntity).setFederationHub(null);
+        context.getSource().sendSuccess(new StringTextComponent("Removed federation member " + member), true);
+        return 1;
+    }
+
+    private static StorageControllerTileEntity getHub(CommandContext<CommandSource> context) throws CommandSyntaxException {
+        BlockPos hubPos = BlockPosArgument.getLoadedBlockPos(context, "hub");
+        TileEntity tileEntity = context.getSource().getLevel().getBlockEntity(hubPos);
+        if (!(tileEntity instanceof StorageControllerTileEntity)) {
+            context.getSource().sendFailure(new StringTextComponent("No storage controller at " + hubPos));
+            return null;
+        }
+        return (StorageControllerTileEntity) tileEntity;
+    }
+    //endregion Static Methods
+}
@@ -28,6 +28,7 @@ import com.github.klikli_dev.occultism.common.tile.StorageControllerTileEntity;
 import com.github.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
 import com.github.klikli_dev.occultism.network.OccultismPackets;
 import com.github.klikli_dev.occultism.registry.OccultismContainers;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.entity.player.ServerPlayerEntity;
@@ -109,7 +110,7 @@ public class StorageControllerContainer extends StorageControllerContainerBase {
         World world = this.storageController.getLevel();
         //send stack updates on a slow tick while interacting
         if (!world.isClientSide && world.getGameTime() % 40 == 0) {
-            OccultismPackets.sendTo((ServerPlayerEntity) player, this.storageController.getMessageUpdateStacks());
+            StorageUtil.sendStacksUpdate((ServerPlayerEntity) player, this.storageController);
             OccultismPackets.sendTo((ServerPlayerEntity) player,
                     new MessageUpdateLinkedMachines(this.storageController.getLinkedMachines()));
         }
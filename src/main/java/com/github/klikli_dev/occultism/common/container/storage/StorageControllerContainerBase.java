@@ -24,12 +24,15 @@ package com.github.klikli_dev.occultism.common.container.storage;
 
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.github.klikli_dev.occultism.api.common.data.GlobalBlockPos;
+import com.github.klikli_dev.occultism.api.common.data.StorageView;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
 import com.github.klikli_dev.occultism.client.gui.storage.StorageControllerGuiBase;
+import com.github.klikli_dev.occultism.common.misc.CraftingRecipeCache;
 import com.github.klikli_dev.occultism.common.misc.ItemStackComparator;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
 import com.github.klikli_dev.occultism.common.misc.StorageControllerCraftingInventory;
 import com.github.klikli_dev.occultism.common.misc.StorageControllerSlot;
-import com.github.klikli_dev.occultism.network.OccultismPackets;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.entity.player.ServerPlayerEntity;
@@ -42,7 +45,6 @@ import net.minecraft.inventory.container.ContainerType;
 import net.minecraft.inventory.container.Slot;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.ICraftingRecipe;
-import net.minecraft.item.crafting.IRecipeType;
 import net.minecraft.network.play.server.SSetSlotPacket;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.NonNullList;
@@ -50,9 +52,7 @@ import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.wrapper.PlayerMainInvWrapper;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 public abstract class StorageControllerContainerBase extends Container implements IStorageControllerContainer {
 
@@ -68,6 +68,15 @@ public abstract class StorageControllerContainerBase extends Container implement
      * used to lock recipe while crafting
      */
     protected boolean recipeLocked = false;
+
+    /**
+     * The storage controller stacks version the client has, used to only send changes.
+     */
+    protected long stacksVersion = -1;
+    protected int paletteEpoch = -1;
+    protected int paletteSize;
+    protected StorageView storageView;
+    protected CraftingRecipeCache recipeCache = new CraftingRecipeCache();
     //endregion Fields
 
     //region Initialization
@@ -96,6 +105,42 @@ public abstract class StorageControllerContainerBase extends Container implement
         return this.matrix;
     }
 
+    @Override
+    public long getStacksVersion() {
+        return this.stacksVersion;
+    }
+
+    @Override
+    public void setStacksVersion(long version) {
+        this.stacksVersion = version;
+    }
+
+    @Override
+    public int getPaletteEpoch() {
+        return this.paletteEpoch;
+    }
+
+    @Override
+    public int getPaletteSize() {
+        return this.paletteSize;
+    }
+
+    @Override
+    public void setPalette(int epoch, int size) {
+        this.paletteEpoch = epoch;
+        this.paletteSize = size;
+    }
+
+    @Override
+    public StorageView getStorageView() {
+        return this.storageView;
+    }
+
+    @Override
+    public void setStorageView(StorageView view) {
+        this.storageView = view;
+    }
+
     @Override
     public void slotsChanged(IInventory inventoryIn) {
         if (this.recipeLocked) {
@@ -142,7 +187,7 @@ public abstract class StorageControllerContainerBase extends Container implement
                 this.broadcastChanges();
 
                 //get updated stacks from storage controller and send to client
-                OccultismPackets.sendTo((ServerPlayerEntity) player, storageController.getMessageUpdateStacks());
+                StorageUtil.sendStacksUpdate((ServerPlayerEntity) player, storageController);
 
                 if (!remainingItemStack.isEmpty()) {
                     slot.onTake(player, slotStack);
@@ -205,7 +250,7 @@ public abstract class StorageControllerContainerBase extends Container implement
 
     protected void findRecipeForMatrixClient() {
         Optional<ICraftingRecipe> optional =
-                this.player.level.getRecipeManager().getRecipeFor(IRecipeType.CRAFTING, this.matrix, this.player.level);
+                this.recipeCache.getRecipeFor(this.player.level.getRecipeManager(), this.matrix, this.player.level);
         optional.ifPresent(iCraftingRecipe -> this.currentRecipe = iCraftingRecipe);
     }
 
@@ -216,9 +261,8 @@ public abstract class StorageControllerContainerBase extends Container implement
             this.currentRecipe = null;
             ServerPlayerEntity serverplayerentity = (ServerPlayerEntity) this.player;
             ItemStack itemstack = ItemStack.EMPTY;
-            Optional<ICraftingRecipe> optional = this.player.level.getServer().getRecipeManager()
-                    .getRecipeFor(IRecipeType.CRAFTING, this.matrix,
-                            this.player.level);
+            Optional<ICraftingRecipe> optional = this.recipeCache
+                    .getRecipeFor(this.player.level.getServer().getRecipeManager(), this.matrix, this.player.level);
             if (optional.isPresent()) {
                 ICraftingRecipe icraftingrecipe = optional.get();
                 if (this.result.setRecipeUsed(this.player.level, serverplayerentity, icraftingrecipe)) {
@@ -257,6 +301,12 @@ public abstract class StorageControllerContainerBase extends Container implement
             return;
         }
 
+        //simple recipes are crafted all at once, everything else craft by craft below
+        if (this.craftShiftBatch(player, storageController, result)) {
+            this.finishCraftShift(player);
+            return;
+        }
+
         //get the stack size of the result
         int resultStackSize = result.getCount();
         List<ItemStack> resultList = new ArrayList<>();
@@ -368,6 +418,93 @@ public abstract class StorageControllerContainerBase extends Container implement
         }
         ItemHandlerHelper.giveItemToPlayer(player, finalResult);
 
+        this.finishCraftShift(player);
+    }
+
+    /**
+     * Crafts as often as possible in one go, extracting the ingredients for all crafts at once.
+     * Only used if no ingredient leaves anything behind in the matrix, such as container items or tools.
+     *
+     * @param player            the crafting player.
+     * @param storageController the storage controller to take ingredients from.
+     * @param result            the result of a single craft.
+     * @return true if the batch craft was handled, false if crafting needs to happen craft by craft.
+     */
+    protected boolean craftShiftBatch(PlayerEntity player, IStorageController storageController, ItemStack result) {
+        if (storageController == null)
+            return false;
+
+        for (ItemStack remainingItem : this.currentRecipe.getRemainingItems(this.matrix)) {
+            if (!remainingItem.isEmpty())
+                return false;
+        }
+
+        //group the matrix slots by ingredient, each craft uses one item from each slot.
+        Map<ItemStackKey, List<Integer>> slotsByIngredient = new LinkedHashMap<>();
+        for (int i = 0; i < this.matrix.getContainerSize(); i++) {
+            ItemStack stackInSlot = this.matrix.getItem(i);
+            if (stackInSlot.isEmpty())
+                continue;
+            if (!stackInSlot.getItem().getContainerItem(stackInSlot).isEmpty())
+                return false;
+            slotsByIngredient.computeIfAbsent(ItemStackKey.of(stackInSlot), key -> new ArrayList<>()).add(i);
+        }
+        if (slotsByIngredient.isEmpty())
+            return false;
+
+        //find out how often we can craft, limited by result stack size, ingredients and player inventory space.
+        int resultStackSize = result.getCount();
+        int crafts = result.getMaxStackSize() / resultStackSize;
+        Map<ItemStackKey, Integer> storedAmounts = new HashMap<>();
+        for (Map.Entry<ItemStackKey, List<Integer>> entry : slotsByIngredient.entrySet()) {
+            List<Integer> slots = entry.getValue();
+            int inMatrix = 0;
+            for (int slot : slots) {
+                inMatrix += this.matrix.getItem(slot).getCount();
+            }
+            //only exact matches, so the recipe result stays the same for all crafts.
+            int stored = storageController.getItemStack(
+                    new ItemStackComparator(entry.getKey().getPrototype(), true), slots.size() * crafts, true)
+                    .getCount();
+            storedAmounts.put(entry.getKey(), stored);
+            crafts = Math.min(crafts, (inMatrix + stored) / slots.size());
+        }
+
+        ItemStack remainder = ItemHandlerHelper.insertItemStacked(new PlayerMainInvWrapper(this.playerInventory),
+                ItemHandlerHelper.copyStackWithSize(result, crafts * resultStackSize), true);
+        crafts -= (remainder.getCount() + resultStackSize - 1) / resultStackSize;
+        if (crafts <= 0)
+            return true;
+
+        //take ingredients from storage first, so the matrix stays filled for the next craft.
+        for (Map.Entry<ItemStackKey, List<Integer>> entry : slotsByIngredient.entrySet()) {
+            int needed = entry.getValue().size() * crafts;
+            int fromStorage = Math.min(needed, storedAmounts.get(entry.getKey()));
+            if (fromStorage > 0) {
+                needed -= storageController.getItemStack(
+                        new ItemStackComparator(entry.getKey().getPrototype(), true), fromStorage, false).getCount();
+            }
+            for (int slot : entry.getValue()) {
+                if (needed <= 0)
+                    break;
+                ItemStack stackInSlot = this.matrix.getItem(slot);
+                int taken = Math.min(needed, stackInSlot.getCount());
+                this.matrix.removeItem(slot, taken);
+                needed -= taken;
+            }
+        }
+
+        ItemHandlerHelper.giveItemToPlayer(player,
+                ItemHandlerHelper.copyStackWithSize(result, crafts * resultStackSize));
+        return true;
+    }
+
+    /**
+     * Unlocks the crafting matrix after shift crafting and sends the resulting changes to the player.
+     *
+     * @param player the crafting player.
+     */
+    protected void finishCraftShift(PlayerEntity player) {
         this.broadcastChanges();
 
         //unlock crafting matrix
@@ -375,8 +512,7 @@ public abstract class StorageControllerContainerBase extends Container implement
 
         //update crafting matrix to handle container items / items that survive crafting
         this.slotsChanged(this.matrix);
-        OccultismPackets.sendTo((ServerPlayerEntity) player, this.getStorageController().getMessageUpdateStacks());
-
+        StorageUtil.sendStacksUpdate((ServerPlayerEntity) player, this.getStorageController());
     }
     //endregion Methods
 }
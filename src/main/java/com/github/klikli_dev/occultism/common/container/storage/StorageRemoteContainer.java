@@ -31,6 +31,7 @@ import com.github.klikli_dev.occultism.network.MessageUpdateLinkedMachines;
 import com.github.klikli_dev.occultism.network.OccultismPackets;
 import com.github.klikli_dev.occultism.registry.OccultismContainers;
 import com.github.klikli_dev.occultism.util.CuriosUtil;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.entity.player.ServerPlayerEntity;
@@ -135,7 +136,7 @@ public class StorageRemoteContainer extends StorageControllerContainerBase {
         //stack updates every 40 ticks.
         if (storageController != null && !entityPlayer.level.isClientSide &&
                 entityPlayer.level.getGameTime() % 40 == 0) {
-            OccultismPackets.sendTo((ServerPlayerEntity) this.player, this.getStorageController().getMessageUpdateStacks());
+            StorageUtil.sendStacksUpdate((ServerPlayerEntity) this.player, this.getStorageController());
             OccultismPackets.sendTo((ServerPlayerEntity) this.player,
                     new MessageUpdateLinkedMachines(this.getStorageController().getLinkedMachines()));
         }
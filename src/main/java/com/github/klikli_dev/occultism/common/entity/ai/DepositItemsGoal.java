@@ -76,16 +76,7 @@ public class DepositItemsGoal extends PausableGoal {
     //region Overrides
     @Override
     public boolean canUse() {
-        //do not use if there is a target to attack
-        if (this.entity.getTarget() != null) {
-            return false;
-        }
-        //nothing to deposit in hand
-        if (this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
-            return false;
-        }
-        this.resetTarget();
-        return !this.isPaused() && this.moveTarget != null;
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -119,7 +110,7 @@ public class DepositItemsGoal extends PausableGoal {
                 } else {
                     //continue moving
                     BlockPos moveTarget = this.getMoveTarget();
-                    this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(moveTarget, 0), 1.0f);
+                    this.entity.getPathTracker().moveTo(moveTarget, 1.0f);
                 }
 
                 //when close enough insert item
@@ -164,6 +155,19 @@ public class DepositItemsGoal extends PausableGoal {
     //endregion Overrides
 
     //region Methods
+    protected boolean findWork() {
+        //do not use if there is a target to attack
+        if (this.entity.getTarget() != null) {
+            return false;
+        }
+        //nothing to deposit in hand
+        if (this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
+            return false;
+        }
+        this.resetTarget();
+        return !this.isPaused() && this.moveTarget != null;
+    }
+
     public boolean canSeeTarget() {
 
         RayTraceContext context = new RayTraceContext(this.entity.position(),
@@ -1,48 +0,0 @@
-/*
- * MIT License
- *
- * Copyright 2020 klikli-dev
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
- * associated documentation files (the "Software"), to deal in the Software without restriction, including
- * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
- * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
- * conditions:
- *
- * The above copyright notice and this permission notice shall be included in all copies or substantial
- * portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
- * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
- * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
- * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
- * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
- * OTHER DEALINGS IN THE SOFTWARE.
- */
-
-package com.github.klikli_dev.occultism.common.entity.ai;
-
-import net.minecraft.entity.Entity;
-
-import java.util.Comparator;
-
-public class EntitySorter implements Comparator<Entity> {
-    //region Fields
-    private final Entity entity;
-    //endregion Fields
-
-    //region Initialization
-    public EntitySorter(Entity entity) {
-        this.entity = entity;
-    }
-    //endregion Initialization
-
-    //region Overrides
-    public int compare(Entity a, Entity b) {
-        double distanceA = this.entity.distanceToSqr(a);
-        double distanceB = this.entity.distanceToSqr(b);
-        return Double.compare(distanceA, distanceB);
-    }
-    //endregion Overrides
-}
-//endregion Subtypes
\ No newline at end of file
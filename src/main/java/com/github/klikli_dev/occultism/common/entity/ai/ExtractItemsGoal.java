@@ -72,17 +72,7 @@ public class ExtractItemsGoal extends PausableGoal {
     //region Overrides
     @Override
     public boolean canUse() {
-        //do not use if there is a target to attack
-        if (this.entity.getTarget() != null) {
-            return false;
-        }
-
-        //hand already full, cannot pick up anythings
-        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
-            return false;
-        }
-        this.resetTarget();
-        return !this.isPaused() && this.targetBlock != null;
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -118,7 +108,7 @@ public class ExtractItemsGoal extends PausableGoal {
                 } else {
                     //continue moving
                     BlockPos moveTarget = this.getMoveTarget();
-                    this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(moveTarget, 0), 1.0f);
+                    this.entity.getPathTracker().moveTo(moveTarget, 1.0f);
                 }
 
                 //when close enough extract item
@@ -164,6 +154,20 @@ public class ExtractItemsGoal extends PausableGoal {
     //endregion Overrides
 
     //region Methods
+    protected boolean findWork() {
+        //do not use if there is a target to attack
+        if (this.entity.getTarget() != null) {
+            return false;
+        }
+
+        //hand already full, cannot pick up anythings
+        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
+            return false;
+        }
+        this.resetTarget();
+        return !this.isPaused() && this.targetBlock != null;
+    }
+
     public boolean canSeeTarget() {
 
         RayTraceContext context = new RayTraceContext(this.entity.position(),
@@ -60,17 +60,7 @@ public class FallbackDepositToControllerGoal extends PausableGoal {
     //region Overrides
     @Override
     public boolean canUse() {
-        //do not use if there is a target to attack
-        if (this.entity.getTarget() != null) {
-            return false;
-        }
-
-        if (this.job.getStorageController() == null)
-            return false;
-
-        //if we are holding something but have no deposit location we can execute this
-        return !this.isPaused() && !this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty() &&
-                !this.entity.getDepositPosition().isPresent();
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -97,6 +87,20 @@ public class FallbackDepositToControllerGoal extends PausableGoal {
     //endregion Overrides
 
     //region Methods
+    protected boolean findWork() {
+        //do not use if there is a target to attack
+        if (this.entity.getTarget() != null) {
+            return false;
+        }
+
+        if (this.job.getStorageController() == null)
+            return false;
+
+        //if we are holding something but have no deposit location we can execute this
+        return !this.isPaused() && !this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty() &&
+                !this.entity.getDepositPosition().isPresent();
+    }
+
 
     protected TileEntity findClosestStorageProxy() {
         World world = this.entity.level;
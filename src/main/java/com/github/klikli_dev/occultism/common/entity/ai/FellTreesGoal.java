@@ -25,6 +25,7 @@ package com.github.klikli_dev.occultism.common.entity.ai;
 import com.github.klikli_dev.occultism.Occultism;
 import com.github.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
 import com.github.klikli_dev.occultism.common.job.LumberjackJob;
+import com.github.klikli_dev.occultism.common.misc.WorkAreaBlockIndex;
 import com.github.klikli_dev.occultism.network.MessageSelectBlock;
 import com.github.klikli_dev.occultism.network.OccultismPackets;
 import com.github.klikli_dev.occultism.registry.OccultismTags;
@@ -41,7 +42,6 @@ import net.minecraft.world.World;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class FellTreesGoal extends Goal {
     //region Fields
@@ -49,6 +49,16 @@ public class FellTreesGoal extends Goal {
 
     protected final SpiritEntity entity;
     protected final BlockSorter targetSorter;
+    /**
+     * The potential stumps in the work area, shared with other spirits working in the same area.
+     */
+    protected WorkAreaBlockIndex.Subscription stumpSubscription;
+    /**
+     * The stumps of the subscription, nearest first. Sorted once and used up before sorting again, unless new stumps
+     * are found in between.
+     */
+    protected Deque<BlockPos> stumpQueue = new ArrayDeque<>();
+    protected boolean stumpQueueDirty = true;
     protected BlockPos targetBlock = null;
     protected BlockPos moveTarget = null;
     protected int breakingTime;
@@ -85,11 +95,7 @@ public class FellTreesGoal extends Goal {
     //region Overrides
     @Override
     public boolean canUse() {
-        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
-            return false; //if already holding an item we need to first store it.
-        }
-        this.resetTarget();
-        return this.targetBlock != null;
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
     //endregion Overrides
 
@@ -113,8 +119,7 @@ public class FellTreesGoal extends Goal {
     public void tick() {
         if (this.targetBlock != null) {
 
-            this.entity.getNavigation().moveTo(
-                    this.entity.getNavigation().createPath(this.moveTarget, 0), 1.0f);
+            this.entity.getPathTracker().moveTo(this.moveTarget, 1.0f);
 
             if (Occultism.DEBUG.debugAI) {
                 OccultismPackets.sendToTracking(this.entity, new MessageSelectBlock(this.targetBlock, 5000, 0xffffff));
@@ -153,6 +158,26 @@ public class FellTreesGoal extends Goal {
     //endregion Static Methods
 
     //region Methods
+
+    /**
+     * Releases the stump subscription, e.g. when the spirit changes its job.
+     */
+    public void cancelStumpSubscription() {
+        if (this.stumpSubscription != null) {
+            this.stumpSubscription.cancel();
+            this.stumpSubscription = null;
+        }
+        this.stumpQueue.clear();
+    }
+
+    protected boolean findWork() {
+        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
+            return false; //if already holding an item we need to first store it.
+        }
+        this.resetTarget();
+        return this.targetBlock != null;
+    }
+
     public void updateBreakBlock() {
         this.breakingTime++;
         this.entity.swing(Hand.MAIN_HAND);
@@ -191,19 +216,47 @@ public class FellTreesGoal extends Goal {
         BlockPos workAreaCenter = this.entity.getWorkAreaCenter();
         //get work area, but only half height, we don't need full.
         int workAreaSize = this.entity.getWorkAreaSize().getValue();
-        Stream<BlockPos> stream = BlockPos.betweenClosedStream(
-                        workAreaCenter.offset(-workAreaSize, -workAreaSize / 2, -workAreaSize),
-                        workAreaCenter.offset(workAreaSize, workAreaSize / 2, workAreaSize))
-                .map(BlockPos::immutable);
+        BlockPos workAreaMin = workAreaCenter.offset(-workAreaSize, -workAreaSize / 2, -workAreaSize);
+        BlockPos workAreaMax = workAreaCenter.offset(workAreaSize, workAreaSize / 2, workAreaSize);
+        if (this.stumpSubscription == null || !this.stumpSubscription.covers(world, workAreaMin, workAreaMax)) {
+            if (this.stumpSubscription != null)
+                this.stumpSubscription.cancel();
+            this.stumpSubscription = WorkAreaBlockIndex.get(world).subscribe(this.entity,
+                    WorkAreaBlockIndex.Category.TREE_STUMP, workAreaMin, workAreaMax, new WorkAreaBlockIndex.Listener() {
+                        //region Overrides
+                        @Override
+                        public void onBlockAdded(BlockPos pos) {
+                            FellTreesGoal.this.stumpQueueDirty = true;
+                        }
+
+                        @Override
+                        public void onBlockRemoved(BlockPos pos) {
+                            //removed stumps are skipped when taken from the queue
+                        }
+                        //endregion Overrides
+                    });
+            this.stumpQueueDirty = true;
+        }
 
-        //filter potential stumps
-        List<BlockPos> potentialStumps = stream.filter(pos ->
-                isLog(world, pos) && isTreeSoil(world, pos.below()) && !ignoredTrees.contains(pos)
-        ).collect(Collectors.toList());
+        if (this.stumpQueueDirty || this.stumpQueue.isEmpty()) {
+            List<BlockPos> stumps = new ArrayList<>(this.stumpSubscription.getBlocks());
+            stumps.sort(this.targetSorter);
+            this.stumpQueue = new ArrayDeque<>(stumps);
+            this.stumpQueueDirty = false;
+        }
+        //the index only misses changes that bypass block updates, so we still check each stump when taking it.
+        BlockPos stump = null;
+        while (stump == null && !this.stumpQueue.isEmpty()) {
+            BlockPos pos = this.stumpQueue.poll();
+            if (!ignoredTrees.contains(pos) && this.stumpSubscription.getBlocks().contains(pos) &&
+                isLog(world, pos) && isTreeSoil(world, pos.below()))
+                stump = pos;
+        }
+        //the index scans new work areas over multiple ticks, until then the area is not known to be empty.
+        boolean scanComplete = this.stumpSubscription.isReady();
 
-        if (!potentialStumps.isEmpty()) {
-            potentialStumps.sort(this.targetSorter);
-            this.targetBlock = potentialStumps.get(0);
+        if (stump != null) {
+            this.targetBlock = stump;
 
             //Find a nearby empty block to move to
             this.moveTarget = null;
@@ -222,7 +275,8 @@ public class FellTreesGoal extends Goal {
             }
         } else {
             //if we found nothing in our work area, go on a slow tick;
-            this.lastWorkareaEmptyTime = world.getGameTime();
+            if (scanComplete)
+                this.lastWorkareaEmptyTime = world.getGameTime();
             this.moveTarget = null;
             this.targetBlock = null;
             this.shouldUseLumberjackDimensions = false;
@@ -83,16 +83,7 @@ public class ManageMachineGoal extends Goal {
     //region Overrides
     @Override
     public boolean canUse() {
-        //do not use if there is a target to attack
-        if (this.entity.getTarget() != null) {
-            return false;
-        }
-        //if we have something in hand, we can
-        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
-            return false;
-        }
-        this.resetTarget();
-        return this.targetBlock != null;
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -121,7 +112,7 @@ public class ManageMachineGoal extends Goal {
                 } else {
                     //continue moving
                     BlockPos moveTarget = this.getMoveTarget();
-                    this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(moveTarget, 0), 1.0f);
+                    this.entity.getPathTracker().moveTo(moveTarget, 1.0f);
                 }
 
                 //when close enough, interact
@@ -202,6 +193,19 @@ public class ManageMachineGoal extends Goal {
     //endregion Overrides
 
     //region Methods
+    protected boolean findWork() {
+        //do not use if there is a target to attack
+        if (this.entity.getTarget() != null) {
+            return false;
+        }
+        //if we have something in hand, we can
+        if (!this.entity.getItemInHand(Hand.MAIN_HAND).isEmpty()) {
+            return false;
+        }
+        this.resetTarget();
+        return this.targetBlock != null;
+    }
+
     public boolean canSeeTarget() {
         BlockState targetBlockState = this.entity.level.getBlockState(this.targetBlock);
         RayTraceContext context = new RayTraceContext(this.entity.getEyePosition(0),
@@ -23,6 +23,7 @@
 package com.github.klikli_dev.occultism.common.entity.ai;
 
 import com.github.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
+import com.github.klikli_dev.occultism.common.misc.ItemEntityRegistry;
 import com.github.klikli_dev.occultism.exceptions.ItemHandlerMissingException;
 import com.google.common.base.Predicate;
 import net.minecraft.entity.ai.goal.TargetGoal;
@@ -34,7 +35,6 @@ import net.minecraftforge.items.ItemStackHandler;
 
 import javax.annotation.Nullable;
 import java.util.EnumSet;
-import java.util.List;
 
 public class PickupItemsGoal extends TargetGoal {
 
@@ -42,7 +42,6 @@ public class PickupItemsGoal extends TargetGoal {
 
     protected final SpiritEntity entity;
     protected final Predicate<? super ItemEntity> targetItemSelector;
-    protected final EntitySorter entitySorter;
     protected ItemEntity targetItem;
     protected int executionChance;
     protected float pickupRange;
@@ -71,7 +70,6 @@ public class PickupItemsGoal extends TargetGoal {
             }
             //endregion Overrides
         };
-        this.entitySorter = new EntitySorter(entity);
         this.setFlags(EnumSet.of(Flag.MOVE));
     }
     //endregion Initialization
@@ -79,30 +77,7 @@ public class PickupItemsGoal extends TargetGoal {
     //region Overrides
     @Override
     public boolean canUse() {
-
-        //fire on a slow tick based on chance
-        long worldTime = this.mob.level.getGameTime() % 10;
-        if (this.entity.getNoActionTime() >= 100 && worldTime != 0) {
-            return false;
-        }
-        if (this.executionChance > 0 && this.entity.getRandom().nextInt(this.executionChance) != 0 && worldTime != 0) {
-            return false;
-        }
-
-        //get work area, but only half height, we don't need full.
-        int workAreaSize = this.entity.getWorkAreaSize().getValue();
-        AxisAlignedBB targetBox = new AxisAlignedBB(-workAreaSize, -workAreaSize / 2.0, -workAreaSize, workAreaSize,
-                workAreaSize / 2.0, workAreaSize).move(this.entity.getWorkAreaCenter());
-
-        List<ItemEntity> list = this.mob.level
-                .getEntitiesOfClass(ItemEntity.class, targetBox, this.targetItemSelector);
-        if (list.isEmpty()) {
-            return false;
-        } else {
-            list.sort(this.entitySorter);
-            this.targetItem = list.get(0);
-            return true;
-        }
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -111,7 +86,7 @@ public class PickupItemsGoal extends TargetGoal {
             this.stop();
             this.mob.getNavigation().stop();
         } else {
-            this.mob.getNavigation().moveTo(this.mob.getNavigation().createPath(this.targetItem, 0), 1.0f);
+            this.entity.getPathTracker().moveTo(this.targetItem, 1.0f);
             double distance = this.entity.position().distanceTo(this.targetItem.position());
             if (distance < this.pickupRange) {
                 this.entity.setDeltaMovement(0, 0, 0);
@@ -134,9 +109,47 @@ public class PickupItemsGoal extends TargetGoal {
 
     @Override
     public void start() {
-        this.mob.getNavigation().moveTo(this.mob.getNavigation().createPath(this.targetItem, 0), 1.0f);
+        this.entity.getPathTracker().moveTo(this.targetItem, 1.0f);
         super.start();
     }
+
+    @Override
+    public void stop() {
+        this.releaseTargetItem();
+        super.stop();
+    }
     //endregion Overrides
 
+    //region Methods
+    protected boolean findWork() {
+        //fire on a slow tick based on chance
+        if (!SpiritAIScheduler.isSlowTick(this.entity, this.executionChance))
+            return false;
+
+        //get work area, but only half height, we don't need full.
+        int workAreaSize = this.entity.getWorkAreaSize().getValue();
+        AxisAlignedBB targetBox = new AxisAlignedBB(-workAreaSize, -workAreaSize / 2.0, -workAreaSize, workAreaSize,
+                workAreaSize / 2.0, workAreaSize).move(this.entity.getWorkAreaCenter());
+
+        //closest item no other spirit is going for, the selector only runs until the first match
+        ItemEntityRegistry registry = ItemEntityRegistry.get(this.mob.level);
+        this.releaseTargetItem();
+        ItemEntity item = registry.findClosest(targetBox, this.entity.position(), this.entity,
+                this.targetItemSelector::apply);
+        if (item == null || !registry.claim(item, this.entity))
+            return false;
+        this.targetItem = item;
+        return true;
+    }
+
+    protected void releaseTargetItem() {
+        if (this.targetItem != null) {
+            ItemEntityRegistry registry = ItemEntityRegistry.getIfPresent(this.mob.level);
+            if (registry != null)
+                registry.release(this.targetItem, this.entity);
+            this.targetItem = null;
+        }
+    }
+    //endregion Methods
+
 }
@@ -56,14 +56,7 @@ public class ReplantSaplingGoal extends Goal {
 
     @Override
     public boolean canUse() {
-        //nothing to deposit in hand
-        if (!ItemTags.SAPLINGS.contains(this.entity.getItemInHand(Hand.MAIN_HAND).getItem())) {
-            return false;
-        }
-        if (!this.entity.getJob().map(j -> (LumberjackJob) j).map(j -> j.getLastFelledTree() != null).orElse(false))
-            return false;
-        this.resetTarget();
-        return this.moveTarget != null;
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -107,7 +100,7 @@ public class ReplantSaplingGoal extends Goal {
             } else {
                 //continue moving
                 BlockPos moveTarget = this.getMoveTarget();
-                this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(moveTarget, 0), 1.0f);
+                this.entity.getPathTracker().moveTo(moveTarget, 1.0f);
             }
         } else {
             this.resetTarget(); //if there is no tile entity, recheck
@@ -116,6 +109,17 @@ public class ReplantSaplingGoal extends Goal {
     //endregion Overrides
 
     //region Methods
+    protected boolean findWork() {
+        //nothing to deposit in hand
+        if (!ItemTags.SAPLINGS.contains(this.entity.getItemInHand(Hand.MAIN_HAND).getItem())) {
+            return false;
+        }
+        if (!this.entity.getJob().map(j -> (LumberjackJob) j).map(j -> j.getLastFelledTree() != null).orElse(false))
+            return false;
+        this.resetTarget();
+        return this.moveTarget != null;
+    }
+
 
     private void resetTarget() {
         this.moveTarget = null;
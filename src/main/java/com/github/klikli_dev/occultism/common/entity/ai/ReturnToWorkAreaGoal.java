@@ -52,17 +52,7 @@ public class ReturnToWorkAreaGoal extends Goal {
     //region Overrides
     @Override
     public boolean canUse() {
-
-        //fire on a slow tick based on chance
-        long worldTime = this.entity.level.getGameTime() % 10;
-        if (this.entity.getNoActionTime() >= 100 && worldTime != 0) {
-            return false;
-        }
-        if (this.entity.getRandom().nextInt(this.executionChance) != 0 && worldTime != 0) {
-            return false;
-        }
-
-        return this.entity.getWorkAreaPosition().isPresent();
+        return SpiritAIScheduler.lookForWork(this.entity, this::findWork);
     }
 
     @Override
@@ -71,8 +61,8 @@ public class ReturnToWorkAreaGoal extends Goal {
             this.stop();
             this.entity.getNavigation().stop();
         } else {
-            this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(
-                    this.entity.getWorkAreaPosition().orElse(this.entity.blockPosition()), 0), 1.0f);
+            this.entity.getPathTracker().moveTo(
+                    this.entity.getWorkAreaPosition().orElse(this.entity.blockPosition()), 1.0f);
             double distance = this.entity.position().distanceTo(
                     Vector3d.atCenterOf(this.entity.getWorkAreaPosition().orElse(this.entity.blockPosition())));
             if (distance < 1F) {
@@ -89,10 +79,20 @@ public class ReturnToWorkAreaGoal extends Goal {
 
     @Override
     public void start() {
-        this.entity.getNavigation().moveTo(this.entity.getNavigation().createPath(
-                this.entity.getWorkAreaPosition().orElse(this.entity.blockPosition()), 0), 1.0f);
+        this.entity.getPathTracker().moveTo(
+                this.entity.getWorkAreaPosition().orElse(this.entity.blockPosition()), 1.0f);
         super.start();
     }
     //endregion Overrides
 
+    //region Methods
+    protected boolean findWork() {
+        //fire on a slow tick based on chance
+        if (!SpiritAIScheduler.isSlowTick(this.entity, this.executionChance))
+            return false;
+
+        return this.entity.getWorkAreaPosition().isPresent();
+    }
+    //endregion Methods
+
 }
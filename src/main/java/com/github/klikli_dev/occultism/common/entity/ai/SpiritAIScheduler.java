@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.entity.ai;
+
+import com.github.klikli_dev.occultism.Occultism;
+import com.github.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
+import com.github.klikli_dev.occultism.common.job.SpiritJob;
+import net.minecraft.entity.player.PlayerEntity;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides in which ticks a spirit may look for new work, see {@link SpiritEntity#isThinking()}.
+ * <p>
+ * Each spirit gets a cadence based on the distance to the nearest player and its job, far away spirits look for work
+ * less often but keep working. In addition, the time spirits spend looking for new work is limited per server tick:
+ * once the budget is spent, the remaining spirits wait for the next tick, and spirits that had to wait go first in the
+ * next tick. The budget only bounds these searches, see {@link #lookForWork(SpiritEntity, BooleanSupplier)}; goals
+ * that are already running, movement and job updates are neither deferred nor counted. The searches of the spirit that
+ * exceeds the budget still complete, so a tick may overshoot by the searches of one spirit.
+ */
+public class SpiritAIScheduler {
+
+    //region Fields
+    /**
+     * The interval in ticks in which the cadence of a spirit is updated.
+     */
+    public static final int CADENCE_UPDATE_INTERVAL = 20;
+
+    private static long currentTick = -1;
+    private static long spentNanos;
+    private static boolean budgetExceeded;
+    /**
+     * The smallest overdue ticks of spirits that had to wait for budget in the current tick.
+     */
+    private static long minDeferredOverdue = Long.MAX_VALUE;
+    /**
+     * Spirits less overdue than this wait while spirits deferred in the previous tick catch up, 0 if none were.
+     */
+    private static long deferredOverdueThreshold;
+    //endregion Fields
+
+    //region Static Methods
+
+    /**
+     * Decides if the given spirit may look for new work in this tick. Called once per tick by each spirit.
+     *
+     * @param spirit the spirit.
+     * @return true if the spirit may look for new work.
+     */
+    public static boolean shouldThink(SpiritEntity spirit) {
+        long tick = spirit.getServer().getTickCount();
+        startTick(tick);
+
+        if ((tick + spirit.getId()) % CADENCE_UPDATE_INTERVAL == 0 || spirit.getAiCadence() <= 0)
+            spirit.setAiCadence(getCadence(spirit));
+
+        long overdue = tick - spirit.getLastThinkTick() - spirit.getAiCadence();
+        if (overdue < 0)
+            return false;
+
+        //never defer a spirit for too long, far away spirits slow down but do not stop
+        int maxDeferTicks = Occultism.SERVER_CONFIG.spiritJobs.aiFarCadence.get() * 2;
+        if (overdue < maxDeferTicks) {
+            if (budgetExceeded) {
+                minDeferredOverdue = Math.min(minDeferredOverdue, overdue);
+                return false;
+            }
+            if (overdue < deferredOverdueThreshold)
+                return false;
+        }
+        spirit.setLastThinkTick(tick);
+        return true;
+    }
+
+    /**
+     * Runs the given search for new work if the spirit may look for work in this tick, see {@link #shouldThink}.
+     * Spirit goals call this from canUse, the time spent in the search counts against the tick budget.
+     *
+     * @param spirit the spirit.
+     * @param search the search, returns true if work was found.
+     * @return true if the spirit may look for work and found some.
+     */
+    public static boolean lookForWork(SpiritEntity spirit, BooleanSupplier search) {
+        if (!spirit.isThinking())
+            return false;
+        long start = System.nanoTime();
+        boolean found = search.getAsBoolean();
+        recordCost(System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Decides if a low priority search should run in this tick. Spirits that look for work every tick search on every
+     * 10th game tick and by chance in between, idle spirits only on every 10th game tick. Spirits on a slower cadence
+     * search whenever they look for work, their think ticks are spaced out already and would rarely line up with the
+     * game time.
+     *
+     * @param spirit          the spirit.
+     * @param executionChance the chance as 1 in n to search outside of every 10th game tick, 0 to always search.
+     * @return true if the search should run.
+     */
+    public static boolean isSlowTick(SpiritEntity spirit, int executionChance) {
+        if (spirit.getAiCadence() > 1 || spirit.level.getGameTime() % 10 == 0)
+            return true;
+        if (spirit.getNoActionTime() >= 100)
+            return false;
+        return executionChance <= 0 || spirit.getRandom().nextInt(executionChance) == 0;
+    }
+
+    /**
+     * Records time spent looking for new work in the current tick.
+     *
+     * @param nanos the time spent.
+     */
+    public static void recordCost(long nanos) {
+        spentNanos += nanos;
+        double budgetMillis = Occultism.SERVER_CONFIG.spiritJobs.aiTickBudgetMillis.get();
+        if (budgetMillis > 0 && spentNanos > budgetMillis * 1_000_000)
+            budgetExceeded = true;
+    }
+
+    protected static void startTick(long tick) {
+        if (tick == currentTick)
+            return;
+        //spirits deferred in the last tick go first now, everyone less overdue waits.
+        deferredOverdueThreshold = budgetExceeded && minDeferredOverdue != Long.MAX_VALUE ? minDeferredOverdue + 1 : 0;
+        currentTick = tick;
+        spentNanos = 0;
+        budgetExceeded = false;
+        minDeferredOverdue = Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the ticks between two ticks a spirit looks for new work, based on the distance to the nearest player and
+     * the job of the spirit.
+     *
+     * @param spirit the spirit.
+     * @return the cadence, 1 means every tick.
+     */
+    protected static int getCadence(SpiritEntity spirit) {
+        PlayerEntity player = spirit.level.getNearestPlayer(spirit, -1);
+        double distanceSq = player == null ? Double.MAX_VALUE : player.distanceToSqr(spirit);
+        int nearDistance = Occultism.SERVER_CONFIG.spiritJobs.aiNearDistance.get();
+        int farDistance = Occultism.SERVER_CONFIG.spiritJobs.aiFarDistance.get();
+
+        int cadence;
+        if (distanceSq <= nearDistance * nearDistance)
+            cadence = 1;
+        else if (distanceSq <= farDistance * farDistance)
+            cadence = Occultism.SERVER_CONFIG.spiritJobs.aiMediumCadence.get();
+        else
+            cadence = Occultism.SERVER_CONFIG.spiritJobs.aiFarCadence.get();
+
+        float multiplier = spirit.getJob().map(SpiritJob::getAiCadenceMultiplier).orElse(1.0f);
+        return Math.max(1, Math.round(cadence * multiplier));
+    }
+    //endregion Static Methods
+}
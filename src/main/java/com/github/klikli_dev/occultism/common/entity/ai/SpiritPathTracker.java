@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.entity.ai;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3d;
+
+/**
+ * Re-uses the current path of a spirit while it approaches a target, instead of searching a new path every tick.
+ * A new path is only searched if the target moved too far, the navigation finished or was stopped, or the spirit
+ * got stuck. Failed searches are not repeated every tick either.
+ */
+public class SpiritPathTracker {
+
+    //region Fields
+    /**
+     * How far a target may move before we search a new path, squared.
+     */
+    public static final double REPATH_TARGET_DISTANCE_SQ = 1.5 * 1.5;
+    /**
+     * If the spirit moved less than this distance within STUCK_TICKS while following a path it is considered stuck.
+     */
+    public static final double STUCK_DISTANCE_SQ = 0.25 * 0.25;
+    public static final int STUCK_TICKS = 40;
+    /**
+     * The ticks to wait before searching again after no path was found.
+     */
+    public static final int FAILED_PATH_COOLDOWN = 20;
+
+    protected final MobEntity entity;
+    protected BlockPos target;
+    protected Path path;
+    protected long lastPathTime;
+    protected boolean pathFailed;
+    protected Vector3d progressPosition;
+    protected long progressTime;
+    //endregion Fields
+
+    //region Initialization
+    public SpiritPathTracker(MobEntity entity) {
+        this.entity = entity;
+    }
+    //endregion Initialization
+
+    //region Methods
+
+    /**
+     * Moves towards the given entity, re-using the current path if possible.
+     *
+     * @param target the entity to move to.
+     * @param speed  the speed.
+     * @return true if the spirit is following a path to the target.
+     */
+    public boolean moveTo(Entity target, double speed) {
+        return this.moveTo(target.blockPosition(), speed);
+    }
+
+    /**
+     * Moves towards the given position, re-using the current path if possible.
+     *
+     * @param target the position to move to.
+     * @param speed  the speed.
+     * @return true if the spirit is following a path to the target.
+     */
+    public boolean moveTo(BlockPos target, double speed) {
+        long time = this.entity.level.getGameTime();
+        boolean sameTarget = this.target != null && this.target.distSqr(target) <= REPATH_TARGET_DISTANCE_SQ;
+
+        if (sameTarget) {
+            if (this.pathFailed) {
+                if (time - this.lastPathTime < FAILED_PATH_COOLDOWN)
+                    return false;
+            } else if (this.isFollowingPath() && !this.isStuck(time)) {
+                return true;
+            }
+        }
+
+        this.target = target.immutable();
+        this.lastPathTime = time;
+        this.progressPosition = this.entity.position();
+        this.progressTime = time;
+        this.path = this.entity.getNavigation().createPath(target, 0);
+        this.pathFailed = this.path == null;
+        return this.entity.getNavigation().moveTo(this.path, speed);
+    }
+
+    /**
+     * Forgets the current path, the next call to moveTo searches a new one.
+     */
+    public void reset() {
+        this.target = null;
+        this.path = null;
+        this.pathFailed = false;
+    }
+
+    /**
+     * @return true if the navigation still follows the path we created.
+     */
+    protected boolean isFollowingPath() {
+        //the navigation may have been stopped, finished, or switched to a path of someone else.
+        return this.path != null && !this.path.isDone() && this.entity.getNavigation().getPath() == this.path;
+    }
+
+    protected boolean isStuck(long time) {
+        if (this.entity.position().distanceToSqr(this.progressPosition) > STUCK_DISTANCE_SQ) {
+            this.progressPosition = this.entity.position();
+            this.progressTime = time;
+            return false;
+        }
+        return time - this.progressTime > STUCK_TICKS;
+    }
+    //endregion Methods
+}
@@ -25,6 +25,8 @@ package com.github.klikli_dev.occultism.common.entity.spirit;
 import com.github.klikli_dev.occultism.api.common.data.WorkAreaSize;
 import com.github.klikli_dev.occultism.common.container.spirit.SpiritContainer;
 import com.github.klikli_dev.occultism.common.entity.ISkinnedCreatureMixin;
+import com.github.klikli_dev.occultism.common.entity.ai.SpiritAIScheduler;
+import com.github.klikli_dev.occultism.common.entity.ai.SpiritPathTracker;
 import com.github.klikli_dev.occultism.common.item.spirit.BookOfCallingItem;
 import com.github.klikli_dev.occultism.common.job.LumberjackJob;
 import com.github.klikli_dev.occultism.common.job.SpiritJob;
@@ -133,6 +135,16 @@ public abstract class SpiritEntity extends TameableEntity implements ISkinnedCre
     });
     protected Optional<SpiritJob> job = Optional.empty();
     protected boolean isInitialized = false;
+    /**
+     * Used by goals to follow paths without searching a new one every tick.
+     */
+    protected SpiritPathTracker pathTracker = new SpiritPathTracker(this);
+    /**
+     * True if the spirit may look for new work in this tick, see {@link SpiritAIScheduler}.
+     */
+    protected boolean thinking = true;
+    protected long lastThinkTick;
+    protected int aiCadence;
 
     //endregion Fields
     //region Initialization
@@ -184,6 +196,35 @@ public abstract class SpiritEntity extends TameableEntity implements ISkinnedCre
         return super.getCapability(capability, facing);
     }
 
+    public SpiritPathTracker getPathTracker() {
+        return this.pathTracker;
+    }
+
+    /**
+     * Goals that look for new work should only do so if this is true.
+     *
+     * @return true if the spirit may look for new work in this tick.
+     */
+    public boolean isThinking() {
+        return this.thinking;
+    }
+
+    public long getLastThinkTick() {
+        return this.lastThinkTick;
+    }
+
+    public void setLastThinkTick(long lastThinkTick) {
+        this.lastThinkTick = lastThinkTick;
+    }
+
+    public int getAiCadence() {
+        return this.aiCadence;
+    }
+
+    public void setAiCadence(int aiCadence) {
+        this.aiCadence = aiCadence;
+    }
+
     public Optional<BlockPos> getDepositPosition() {
         return this.entityData.get(DEPOSIT_POSITION);
     }
@@ -383,6 +424,7 @@ public abstract class SpiritEntity extends TameableEntity implements ISkinnedCre
     @Override
     public void aiStep() {
         if (!this.level.isClientSide) {
+            this.thinking = SpiritAIScheduler.shouldThink(this);
             if (!this.isInitialized) {
                 this.isInitialized = true;
                 this.init();
@@ -83,6 +83,7 @@ public class LumberjackJob extends SpiritJob {
         this.entity.targetSelector.removeGoal(this.replantSaplingGoal);
         this.entity.targetSelector.removeGoal(this.pickupItemsGoal);
         this.entity.goalSelector.removeGoal(this.fellTreesGoal);
+        this.fellTreesGoal.cancelStumpSubscription();
         this.entity.goalSelector.removeGoal(this.depositItemsGoal);
     }
 
@@ -126,6 +126,12 @@ public class ManageMachineJob extends SpiritJob {
     //endregion Getter / Setter
 
     //region Overrides
+    @Override
+    public float getAiCadenceMultiplier() {
+        //players wait for the orders this spirit handles, so it should stay responsive
+        return 0.5f;
+    }
+
     @Override
     public void init() {
         this.entity.getNavigation().getNodeEvaluator().setCanPassDoors(true);
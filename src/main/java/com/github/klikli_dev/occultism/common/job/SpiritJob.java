@@ -83,6 +83,15 @@ public abstract class SpiritJob implements INBTSerializable<CompoundNBT> {
 
     }
 
+    /**
+     * Scales how often the spirit looks for new work, see {@link com.github.klikli_dev.occultism.common.entity.ai.SpiritAIScheduler}.
+     *
+     * @return the multiplier for the AI cadence, smaller values are more responsive.
+     */
+    public float getAiCadenceMultiplier() {
+        return 1.0f;
+    }
+
     /**
      * Writes job data to NBT.
      *
@@ -0,0 +1,306 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.api.common.tile.IStorageControllerBulkAccess;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.CraftingInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.crafting.Ingredient;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.items.wrapper.PlayerMainInvWrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Fills a crafting matrix from the player inventory and a storage controller.
+ * Each matrix slot has a list of alternatives in order of preference. All alternatives of all slots are matched in
+ * one pass over the player inventory and one pass over the controller contents, then the items are extracted per
+ * item key instead of per slot.
+ */
+public class CraftingMatrixResolver {
+
+    //region Fields
+    public static final int MATRIX_SIZE = 9;
+
+    protected final List<List<Predicate<ItemStack>>> slotAlternatives;
+
+    /**
+     * The alternatives by the items they can match, so each stored key only has to be tested against a few of them.
+     */
+    protected final Map<Item, List<Predicate<ItemStack>>> alternativesByItem = new HashMap<>();
+    /**
+     * Alternatives we cannot index by item, tested against every key.
+     */
+    protected final List<Predicate<ItemStack>> unindexedAlternatives = new ArrayList<>();
+
+    protected final Map<Predicate<ItemStack>, List<ItemStackKey>> playerMatches = new IdentityHashMap<>();
+    protected final Map<Predicate<ItemStack>, List<ItemStackKey>> controllerMatches = new IdentityHashMap<>();
+    protected final Map<ItemStackKey, Integer> playerAvailable = new LinkedHashMap<>();
+    protected final Map<ItemStackKey, List<Integer>> playerSlots = new HashMap<>();
+    protected final Map<ItemStackKey, Long> controllerAvailable = new HashMap<>();
+
+    protected final ItemStackKey[] slotKeys = new ItemStackKey[MATRIX_SIZE];
+    protected final int[] fromPlayer = new int[MATRIX_SIZE];
+    protected final int[] fromController = new int[MATRIX_SIZE];
+    //endregion Fields
+
+    //region Initialization
+
+    /**
+     * @param slotAlternatives the alternatives for each matrix slot, in order of preference. Must have one entry
+     *                         per matrix slot, empty lists for empty slots.
+     */
+    public CraftingMatrixResolver(List<List<Predicate<ItemStack>>> slotAlternatives) {
+        this.slotAlternatives = slotAlternatives;
+        for (List<Predicate<ItemStack>> alternatives : slotAlternatives) {
+            for (Predicate<ItemStack> alternative : alternatives) {
+                this.indexAlternative(alternative);
+            }
+        }
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Creates a resolver for the given recipe ingredients, laid out in the 3x3 matrix.
+     *
+     * @param ingredients the ingredients, one per matrix slot.
+     * @return the resolver.
+     */
+    public static CraftingMatrixResolver forIngredients(NonNullList<Ingredient> ingredients) {
+        List<List<Predicate<ItemStack>>> slotAlternatives = new ArrayList<>(MATRIX_SIZE);
+        for (int slot = 0; slot < MATRIX_SIZE; slot++) {
+            List<Predicate<ItemStack>> alternatives = new ArrayList<>(1);
+            Ingredient ingredient = slot < ingredients.size() ? ingredients.get(slot) : Ingredient.EMPTY;
+            if (!ingredient.isEmpty())
+                alternatives.add(ingredient);
+            slotAlternatives.add(alternatives);
+        }
+        return new CraftingMatrixResolver(slotAlternatives);
+    }
+    //endregion Static Methods
+
+    //region Methods
+
+    /**
+     * Fills all empty matrix slots that have alternatives, preferring items from the player inventory.
+     *
+     * @param player      the player whose main inventory to take from.
+     * @param craftMatrix the matrix to fill.
+     * @param controller  the storage controller to take from.
+     * @param fillToMax   true to fill every slot up to its stack limit instead of placing a single item.
+     */
+    public void fill(PlayerEntity player, CraftingInventory craftMatrix, IStorageControllerBulkAccess controller,
+                     boolean fillToMax) {
+        PlayerMainInvWrapper playerInventory = new PlayerMainInvWrapper(player.inventory);
+        this.collectPlayerMatches(playerInventory);
+        this.collectControllerMatches(controller);
+
+        //first round: one item per slot, trying the alternatives in order.
+        for (int slot = 0; slot < MATRIX_SIZE; slot++) {
+            if (!craftMatrix.getItem(slot).isEmpty())
+                continue;
+            for (Predicate<ItemStack> alternative : this.slotAlternatives.get(slot)) {
+                if (this.reserveFirst(slot, this.playerMatches.get(alternative), true) ||
+                        this.reserveFirst(slot, this.controllerMatches.get(alternative), false))
+                    break;
+            }
+        }
+
+        //further rounds: top up the slots one item at a time, so slots sharing an item are filled evenly.
+        if (fillToMax) {
+            boolean progress = true;
+            while (progress) {
+                progress = false;
+                for (int slot = 0; slot < MATRIX_SIZE; slot++) {
+                    ItemStackKey key = this.slotKeys[slot];
+                    if (key == null)
+                        continue;
+                    int limit = Math.min(key.getPrototype().getMaxStackSize(), craftMatrix.getMaxStackSize());
+                    if (this.fromPlayer[slot] + this.fromController[slot] < limit &&
+                            (this.reserve(slot, key, true) || this.reserve(slot, key, false)))
+                        progress = true;
+                }
+            }
+        }
+
+        this.extract(playerInventory, controller);
+
+        for (int slot = 0; slot < MATRIX_SIZE; slot++) {
+            int count = this.fromPlayer[slot] + this.fromController[slot];
+            if (this.slotKeys[slot] != null && count > 0)
+                craftMatrix.setItem(slot, this.slotKeys[slot].createStack(count));
+        }
+    }
+
+    protected void indexAlternative(Predicate<ItemStack> alternative) {
+        if (alternative instanceof ItemStackComparator) {
+            this.addIndexedAlternative(((ItemStackComparator) alternative).getFilterStack().getItem(), alternative);
+        } else if (alternative instanceof Ingredient) {
+            for (ItemStack stack : ((Ingredient) alternative).getItems()) {
+                this.addIndexedAlternative(stack.getItem(), alternative);
+            }
+        } else {
+            this.unindexedAlternatives.add(alternative);
+        }
+    }
+
+    protected void addIndexedAlternative(Item item, Predicate<ItemStack> alternative) {
+        List<Predicate<ItemStack>> alternatives = this.alternativesByItem.computeIfAbsent(item, i -> new ArrayList<>());
+        //ingredients may list the same item several times, e.g. with different nbt.
+        if (!alternatives.contains(alternative))
+            alternatives.add(alternative);
+    }
+
+    protected void collectPlayerMatches(PlayerMainInvWrapper playerInventory) {
+        for (int i = 0; i < playerInventory.getSlots(); i++) {
+            ItemStack stack = playerInventory.getStackInSlot(i);
+            if (stack.isEmpty())
+                continue;
+            ItemStackKey key = ItemStackKey.of(stack);
+            Integer available = this.playerAvailable.get(key);
+            if (available == null) {
+                if (!this.addMatches(key, this.playerMatches))
+                    continue; //not needed by any slot, no need to track it.
+                this.playerSlots.put(key, new ArrayList<>());
+                available = 0;
+            }
+            this.playerAvailable.put(key, available + stack.getCount());
+            this.playerSlots.get(key).add(i);
+        }
+    }
+
+    protected void collectControllerMatches(IStorageControllerBulkAccess controller) {
+        for (Map.Entry<ItemStackKey, Long> entry : controller.getTotals().entrySet()) {
+            if (entry.getValue() > 0 && this.addMatches(entry.getKey(), this.controllerMatches))
+                this.controllerAvailable.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds the given key to the matches of all alternatives it satisfies.
+     *
+     * @return true if any alternative matched.
+     */
+    protected boolean addMatches(ItemStackKey key, Map<Predicate<ItemStack>, List<ItemStackKey>> matches) {
+        boolean matched = false;
+        List<Predicate<ItemStack>> alternatives = this.alternativesByItem.get(key.getItem());
+        if (alternatives != null) {
+            for (Predicate<ItemStack> alternative : alternatives) {
+                matched |= this.addMatch(key, alternative, matches);
+            }
+        }
+        for (Predicate<ItemStack> alternative : this.unindexedAlternatives) {
+            matched |= this.addMatch(key, alternative, matches);
+        }
+        return matched;
+    }
+
+    protected boolean addMatch(ItemStackKey key, Predicate<ItemStack> alternative,
+                               Map<Predicate<ItemStack>, List<ItemStackKey>> matches) {
+        if (!alternative.test(key.getPrototype()))
+            return false;
+        matches.computeIfAbsent(alternative, a -> new ArrayList<>()).add(key);
+        return true;
+    }
+
+    protected boolean reserveFirst(int slot, List<ItemStackKey> candidates, boolean player) {
+        if (candidates == null)
+            return false;
+        for (ItemStackKey key : candidates) {
+            if (this.reserve(slot, key, player))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserves one item of the given key for the given slot, if available from the given source.
+     */
+    protected boolean reserve(int slot, ItemStackKey key, boolean player) {
+        if (player) {
+            int available = this.playerAvailable.getOrDefault(key, 0);
+            if (available <= 0)
+                return false;
+            this.playerAvailable.put(key, available - 1);
+            this.fromPlayer[slot]++;
+        } else {
+            long available = this.controllerAvailable.getOrDefault(key, 0L);
+            if (available <= 0)
+                return false;
+            this.controllerAvailable.put(key, available - 1);
+            this.fromController[slot]++;
+        }
+        this.slotKeys[slot] = key;
+        return true;
+    }
+
+    /**
+     * Extracts all reserved items, once per key and source.
+     */
+    protected void extract(PlayerMainInvWrapper playerInventory, IStorageControllerBulkAccess controller) {
+        Map<ItemStackKey, Integer> playerTotals = new HashMap<>();
+        Map<ItemStackKey, Integer> controllerTotals = new HashMap<>();
+        for (int slot = 0; slot < MATRIX_SIZE; slot++) {
+            ItemStackKey key = this.slotKeys[slot];
+            if (key == null)
+                continue;
+            if (this.fromPlayer[slot] > 0)
+                playerTotals.merge(key, this.fromPlayer[slot], Integer::sum);
+            if (this.fromController[slot] > 0)
+                controllerTotals.merge(key, this.fromController[slot], Integer::sum);
+        }
+
+        for (Map.Entry<ItemStackKey, Integer> entry : playerTotals.entrySet()) {
+            int remaining = entry.getValue();
+            for (int i : this.playerSlots.get(entry.getKey())) {
+                remaining -= playerInventory.extractItem(i, remaining, false).getCount();
+                if (remaining <= 0)
+                    break;
+            }
+        }
+
+        for (Map.Entry<ItemStackKey, Integer> entry : controllerTotals.entrySet()) {
+            long extracted = controller.extractItems(entry.getKey(), entry.getValue(), false);
+            //should not happen as we counted in the same tick, but never place items that were not extracted.
+            long missing = entry.getValue() - extracted;
+            for (int slot = MATRIX_SIZE - 1; slot >= 0 && missing > 0; slot--) {
+                if (entry.getKey().equals(this.slotKeys[slot])) {
+                    int reduce = (int) Math.min(missing, this.fromController[slot]);
+                    this.fromController[slot] -= reduce;
+                    missing -= reduce;
+                }
+            }
+        }
+    }
+    //endregion Methods
+}
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import net.minecraft.inventory.CraftingInventory;
+import net.minecraft.item.crafting.ICraftingRecipe;
+import net.minecraft.item.crafting.IRecipeType;
+import net.minecraft.item.crafting.RecipeManager;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Small LRU cache for crafting recipe lookups, keyed by the items and nbt in the crafting matrix.
+ * Counts are ignored, as they do not affect crafting recipes.
+ */
+public class CraftingRecipeCache {
+
+    //region Fields
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    /**
+     * Incremented whenever recipes are reloaded, caches created before are cleared on their next lookup.
+     */
+    protected static volatile int generation;
+
+    protected final int maxSize;
+    protected final Map<List<ItemStackKey>, Optional<ICraftingRecipe>> recipes;
+    protected int cacheGeneration = generation;
+    protected RecipeManager recipeManager;
+    protected ICraftingRecipe lastRecipe;
+    //endregion Fields
+
+    //region Initialization
+    public CraftingRecipeCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public CraftingRecipeCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.recipes = new LinkedHashMap<List<ItemStackKey>, Optional<ICraftingRecipe>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<ItemStackKey>, Optional<ICraftingRecipe>> eldest) {
+                return this.size() > CraftingRecipeCache.this.maxSize;
+            }
+        };
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Invalidates all recipe caches, called when recipes are reloaded.
+     */
+    public static void invalidateAll() {
+        generation++;
+    }
+    //endregion Static Methods
+
+    //region Methods
+
+    /**
+     * Gets the crafting recipe for the given matrix, checking the last found recipe and the cache first.
+     *
+     * @param recipeManager the recipe manager to look up uncached recipes in.
+     * @param matrix        the crafting matrix.
+     * @param level         the world.
+     * @return the recipe, or an empty optional if none matches.
+     */
+    public Optional<ICraftingRecipe> getRecipeFor(RecipeManager recipeManager, CraftingInventory matrix,
+                                                  World level) {
+        if (this.cacheGeneration != generation || this.recipeManager != recipeManager) {
+            this.recipes.clear();
+            this.lastRecipe = null;
+            this.cacheGeneration = generation;
+            this.recipeManager = recipeManager;
+        }
+
+        if (this.lastRecipe != null && this.lastRecipe.matches(matrix, level))
+            return Optional.of(this.lastRecipe);
+
+        List<ItemStackKey> signature = new ArrayList<>(matrix.getContainerSize());
+        for (int i = 0; i < matrix.getContainerSize(); i++) {
+            signature.add(ItemStackKey.of(matrix.getItem(i)));
+        }
+
+        Optional<ICraftingRecipe> recipe = this.recipes.get(signature);
+        if (recipe == null) {
+            recipe = recipeManager.getRecipeFor(IRecipeType.CRAFTING, matrix, level);
+            this.recipes.put(signature, recipe);
+        }
+        recipe.ifPresent(r -> this.lastRecipe = r);
+        return recipe;
+    }
+    //endregion Methods
+}
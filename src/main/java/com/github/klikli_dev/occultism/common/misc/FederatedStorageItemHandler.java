@@ -0,0 +1,465 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.api.common.container.IStorageControllerItemHandler;
+import com.github.klikli_dev.occultism.common.tile.StorageControllerTileEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Item handler of a storage controller that acts as the hub of a federation.
+ * Merges the hub's own storage with the own storage of all loaded member controllers into one index.
+ * Inserts prefer storages already holding the item, then the storage with the most free capacity.
+ * Extracts are served from the hub first, then from the nearest members.
+ * Only the hub's own storage is serialized, members keep their items.
+ */
+public class FederatedStorageItemHandler implements IStorageControllerItemHandler {
+
+    //region Fields
+    protected final StorageControllerTileEntity hub;
+    protected final IStorageControllerItemHandler own;
+    /**
+     * The loaded members, nearest first.
+     */
+    protected List<Member> members = Collections.emptyList();
+    /**
+     * The hub's own handler followed by the member handlers, in slot order.
+     */
+    protected List<IStorageControllerItemHandler> handlers;
+    /**
+     * The first slot of each handler, plus the total slot count as last entry.
+     */
+    protected int[] slotOffsets;
+    protected Set<ItemStackKey> changedKeys = new LinkedHashSet<>();
+    //endregion Fields
+
+    //region Initialization
+    public FederatedStorageItemHandler(StorageControllerTileEntity hub, IStorageControllerItemHandler own) {
+        this.hub = hub;
+        this.own = own;
+        this.updateHandlers();
+    }
+    //endregion Initialization
+
+    //region Getter / Setter
+
+    /**
+     * @return the hub's own storage.
+     */
+    public IStorageControllerItemHandler getOwn() {
+        return this.own;
+    }
+
+    public boolean hasMembers() {
+        return !this.getMembers().isEmpty();
+    }
+
+    /**
+     * @return the summed up max slots of all loaded members.
+     */
+    public int getMemberMaxSlots() {
+        int maxSlots = 0;
+        for (Member member : this.getMembers()) {
+            maxSlots += member.controller.getOwnMaxSlots();
+        }
+        return maxSlots;
+    }
+
+    @Override
+    public void setSize(int size) {
+        this.own.setSize(size);
+        this.updateSlotOffsets();
+    }
+
+    @Override
+    public int getUsedSlots() {
+        int usedSlots = this.own.getUsedSlots();
+        for (Member member : this.getMembers()) {
+            usedSlots += member.handler.getUsedSlots();
+        }
+        return usedSlots;
+    }
+
+    @Override
+    public long getCount(ItemStackKey key) {
+        long count = this.own.getCount(key);
+        for (Member member : this.getMembers()) {
+            count += member.handler.getCount(key);
+        }
+        return count;
+    }
+
+    @Override
+    public Map<ItemStackKey, Long> getTotals() {
+        if (this.getMembers().isEmpty())
+            return this.own.getTotals();
+        Map<ItemStackKey, Long> totals = new LinkedHashMap<>(this.own.getTotals());
+        for (Member member : this.getMembers()) {
+            for (Map.Entry<ItemStackKey, Long> entry : member.handler.getTotals().entrySet()) {
+                totals.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+        return Collections.unmodifiableMap(totals);
+    }
+
+    @Override
+    public int getSlots() {
+        int slots = this.own.getSlots();
+        for (Member member : this.getMembers()) {
+            slots += member.handler.getSlots();
+        }
+        return slots;
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack getStackInSlot(int slot) {
+        int index = this.getHandlerIndex(slot);
+        if (index < 0)
+            return ItemStack.EMPTY;
+        return this.handlers.get(index).getStackInSlot(slot - this.slotOffsets[index]);
+    }
+
+    @Override
+    public int getSlotLimit(int slot) {
+        int index = this.getHandlerIndex(slot);
+        if (index < 0)
+            return 0;
+        return this.handlers.get(index).getSlotLimit(slot - this.slotOffsets[index]);
+    }
+    //endregion Getter / Setter
+
+    //region Overrides
+    @Override
+    public boolean isItemValid(int slot, @Nonnull ItemStack stack) {
+        int index = this.getHandlerIndex(slot);
+        if (index < 0)
+            return false;
+        return this.handlers.get(index).isItemValid(slot - this.slotOffsets[index], stack);
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack insertItem(int slot, @Nonnull ItemStack stack, boolean simulate) {
+        int index = this.getHandlerIndex(slot);
+        if (index < 0)
+            return stack;
+        ItemStack remainder = this.handlers.get(index).insertItem(slot - this.slotOffsets[index], stack, simulate);
+        if (!simulate && remainder.getCount() != stack.getCount())
+            this.changedKeys.add(ItemStackKey.of(stack));
+        return remainder;
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack extractItem(int slot, int amount, boolean simulate) {
+        int index = this.getHandlerIndex(slot);
+        if (index < 0)
+            return ItemStack.EMPTY;
+        ItemStack extracted = this.handlers.get(index).extractItem(slot - this.slotOffsets[index], amount, simulate);
+        if (!simulate && !extracted.isEmpty())
+            this.changedKeys.add(ItemStackKey.of(extracted));
+        return extracted;
+    }
+
+    @Override
+    public Collection<ItemStackKey> getCandidateKeys(Predicate<ItemStack> comparator) {
+        if (this.getMembers().isEmpty())
+            return this.own.getCandidateKeys(comparator);
+        Set<ItemStackKey> keys = new LinkedHashSet<>(this.own.getCandidateKeys(comparator));
+        for (Member member : this.getMembers()) {
+            keys.addAll(member.handler.getCandidateKeys(comparator));
+        }
+        return keys;
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack insertItemIndexed(@Nonnull ItemStack stack, boolean simulate) {
+        if (this.getMembers().isEmpty() || stack.isEmpty())
+            return this.own.insertItemIndexed(stack, simulate);
+
+        ItemStackKey key = ItemStackKey.of(stack);
+        ItemStack remainder = stack;
+        List<Member> candidates = new ArrayList<>(this.getMembers().size() + 1);
+        candidates.add(new Member(this.hub, this.own));
+        candidates.addAll(this.getMembers());
+
+        //first top up storages that already hold the item, then fill the ones with the most free capacity.
+        for (Member candidate : candidates) {
+            if (candidate.handler.getCount(key) > 0) {
+                remainder = candidate.handler.insertItemIndexed(remainder, simulate);
+                if (remainder.isEmpty())
+                    break;
+            }
+        }
+        if (!remainder.isEmpty()) {
+            candidates.sort(Comparator.comparingInt(Member::getFreeSlots).reversed());
+            for (Member candidate : candidates) {
+                remainder = candidate.handler.insertItemIndexed(remainder, simulate);
+                if (remainder.isEmpty())
+                    break;
+            }
+        }
+
+        if (!simulate && remainder.getCount() != stack.getCount())
+            this.changedKeys.add(key);
+        return remainder;
+    }
+
+    @Override
+    public int extractItemIndexed(ItemStackKey key, int amount, boolean simulate) {
+        int extracted = 0;
+        for (IStorageControllerItemHandler handler : this.handlers) {
+            if (extracted >= amount)
+                break;
+            extracted += handler.extractItemIndexed(key, amount - extracted, simulate);
+        }
+        if (!simulate && extracted > 0 && !this.getMembers().isEmpty())
+            this.changedKeys.add(key);
+        return extracted;
+    }
+
+    @Override
+    public Set<ItemStackKey> pollChangedKeys() {
+        Set<ItemStackKey> ownChanges = this.own.pollChangedKeys();
+        if (this.changedKeys.isEmpty())
+            return ownChanges;
+        Set<ItemStackKey> changes = this.changedKeys;
+        changes.addAll(ownChanges);
+        this.changedKeys = new LinkedHashSet<>();
+        return changes;
+    }
+
+    @Override
+    public CompoundNBT serializeNBT() {
+        return this.own.serializeNBT();
+    }
+
+    @Override
+    public void deserializeNBT(CompoundNBT nbt) {
+        this.own.deserializeNBT(nbt);
+        this.updateSlotOffsets();
+    }
+    //endregion Overrides
+
+    //region Methods
+
+    /**
+     * Sets the loaded member controllers. Items of members that join or leave are reported as changed.
+     *
+     * @param controllers the member controllers, nearest first.
+     */
+    public void setMembers(List<StorageControllerTileEntity> controllers) {
+        Map<StorageControllerTileEntity, Member> previous = new HashMap<>();
+        for (Member member : this.getMembers()) {
+            previous.put(member.controller, member);
+        }
+
+        List<Member> members = new ArrayList<>(controllers.size());
+        for (StorageControllerTileEntity controller : controllers) {
+            Member member = previous.remove(controller);
+            if (member == null) {
+                member = new Member(controller, controller.getOwnItemHandler());
+                member.seenVersion = controller.getStacksVersion();
+                this.changedKeys.addAll(member.handler.getTotals().keySet());
+            }
+            members.add(member);
+        }
+        for (Member removed : previous.values()) {
+            this.changedKeys.addAll(removed.handler.getTotals().keySet());
+        }
+        this.members = members.isEmpty() ? Collections.emptyList() : members;
+        this.updateHandlers();
+    }
+
+    /**
+     * Drops the given member right away, e.g. because its chunk is unloading.
+     *
+     * @param controller the member controller.
+     */
+    public void removeMember(StorageControllerTileEntity controller) {
+        for (Member member : this.members) {
+            if (member.controller == controller) {
+                List<Member> members = new ArrayList<>(this.members);
+                members.remove(member);
+                this.changedKeys.addAll(member.handler.getTotals().keySet());
+                this.members = members.isEmpty() ? Collections.emptyList() : members;
+                this.updateHandlers();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops members that were removed from the world or unloaded since they were set. Removed controllers drop their
+     * contents as item and unloaded controllers are no longer saved, so they must not be accessed anymore.
+     * Called once per tick by the hub, members also remove themselves when their chunk unloads.
+     */
+    public void validateMembers() {
+        for (Member member : this.members) {
+            if (!member.isAttached()) {
+                List<Member> members = new ArrayList<>(this.members.size());
+                for (Member other : this.members) {
+                    if (!other.isAttached())
+                        this.changedKeys.addAll(other.handler.getTotals().keySet());
+                    else
+                        members.add(other);
+                }
+                this.members = members.isEmpty() ? Collections.emptyList() : members;
+                this.updateHandlers();
+                return;
+            }
+        }
+        this.updateSlotOffsets();
+    }
+
+    /**
+     * Picks up changes members made outside of this handler, e.g. through their own gui or pipes.
+     *
+     * @return false if the changes of a member could not be determined, then all viewers need a full snapshot.
+     */
+    public boolean pollMembers() {
+        boolean complete = true;
+        for (Member member : this.getMembers()) {
+            long version = member.controller.getStacksVersion();
+            if (version == member.seenVersion)
+                continue;
+            Collection<ItemStackKey> changes = member.controller.getChangedKeysSince(member.seenVersion);
+            if (changes != null)
+                this.changedKeys.addAll(changes);
+            else
+                complete = false;
+            member.seenVersion = version;
+        }
+        return complete;
+    }
+
+    /**
+     * @return the loaded members, nearest first. Validated each tick, see {@link #validateMembers()}.
+     */
+    protected List<Member> getMembers() {
+        return this.members;
+    }
+
+    protected void updateHandlers() {
+        List<IStorageControllerItemHandler> handlers = new ArrayList<>(this.members.size() + 1);
+        handlers.add(this.own);
+        for (Member member : this.members) {
+            handlers.add(member.handler);
+        }
+        this.handlers = handlers;
+        this.updateSlotOffsets();
+    }
+
+    protected void updateSlotOffsets() {
+        int[] slotOffsets = new int[this.handlers.size() + 1];
+        for (int i = 0; i < this.handlers.size(); i++) {
+            slotOffsets[i + 1] = slotOffsets[i] + this.handlers.get(i).getSlots();
+        }
+        this.slotOffsets = slotOffsets;
+    }
+
+    /**
+     * Gets the index of the handler holding the given slot. The offsets are refreshed once per tick and when the
+     * found handler turns out to have changed its size in between, e.g. an oversized storage shrinking.
+     *
+     * @param slot the slot.
+     * @return the index of the handler, or -1 if the slot is out of range.
+     */
+    protected int getHandlerIndex(int slot) {
+        int index = this.findHandlerIndex(slot);
+        if (index < 0 || slot - this.slotOffsets[index] >= this.handlers.get(index).getSlots()) {
+            this.updateSlotOffsets();
+            index = this.findHandlerIndex(slot);
+        }
+        return index;
+    }
+
+    protected int findHandlerIndex(int slot) {
+        if (slot < 0 || slot >= this.slotOffsets[this.handlers.size()])
+            return -1;
+        //last handler starting at or before the slot, handlers without slots share their offset with the next one
+        int low = 0;
+        int high = this.handlers.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (this.slotOffsets[mid] <= slot)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+    //endregion Methods
+
+    protected static class Member {
+        //region Fields
+        protected final StorageControllerTileEntity controller;
+        protected final IStorageControllerItemHandler handler;
+        protected long seenVersion;
+        //endregion Fields
+
+        //region Initialization
+        protected Member(StorageControllerTileEntity controller, IStorageControllerItemHandler handler) {
+            this.controller = controller;
+            this.handler = handler;
+        }
+        //endregion Initialization
+
+        //region Getter / Setter
+        protected int getFreeSlots() {
+            return this.controller.getOwnMaxSlots() - this.handler.getUsedSlots();
+        }
+        //endregion Getter / Setter
+
+        //region Methods
+
+        /**
+         * @return true if the controller is still the loaded tile entity at its position.
+         */
+        protected boolean isAttached() {
+            World world = this.controller.getLevel();
+            BlockPos pos = this.controller.getBlockPos();
+            return !this.controller.isRemoved() && world != null && world.isLoaded(pos) &&
+                   world.getBlockEntity(pos) == this.controller;
+        }
+        //endregion Methods
+    }
+}
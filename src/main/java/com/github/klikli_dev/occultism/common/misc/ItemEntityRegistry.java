@@ -0,0 +1,273 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.ItemEntity;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Registry of item entities per world, kept up to date by entity join and leave events.
+ * Items are bucketed into a coarse grid so spirits can look up items in their work area without scanning entities
+ * chunk by chunk. Spirits claim the item they are going for, so multiple spirits working the same area spread out
+ * over different items instead of all chasing the nearest one.
+ */
+public class ItemEntityRegistry {
+
+    //region Fields
+    /**
+     * Cell size of the grid in blocks, as a power of two.
+     */
+    public static final int CELL_SIZE_BITS = 4;
+    /**
+     * Ticks without queries after which the registry stops refreshing its cells each tick.
+     */
+    public static final int IDLE_TICKS = 100;
+
+    private static final Map<RegistryKey<World>, ItemEntityRegistry> registries = new HashMap<>();
+
+    protected final World world;
+    protected final Map<ItemEntity, Long> cellByItem = new HashMap<>();
+    protected final Map<Long, List<ItemEntity>> cells = new HashMap<>();
+    protected final Map<ItemEntity, Entity> claims = new HashMap<>();
+    protected long lastQueryTime = -IDLE_TICKS - 1;
+    protected long lastRefreshTime = -IDLE_TICKS - 1;
+    //endregion Fields
+
+    //region Initialization
+    protected ItemEntityRegistry(World world) {
+        this.world = world;
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Gets the registry for the given world, creating it if needed. Server worlds only.
+     *
+     * @param world the world.
+     * @return the registry.
+     */
+    public static ItemEntityRegistry get(World world) {
+        ItemEntityRegistry registry = registries.get(world.dimension());
+        if (registry == null || registry.world != world) {
+            registry = new ItemEntityRegistry(world);
+            registries.put(world.dimension(), registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Gets the registry for the given world, if one was created.
+     *
+     * @param world the world.
+     * @return the registry or null.
+     */
+    @Nullable
+    public static ItemEntityRegistry getIfPresent(World world) {
+        ItemEntityRegistry registry = registries.get(world.dimension());
+        return registry != null && registry.world == world ? registry : null;
+    }
+
+    public static void remove(World world) {
+        ItemEntityRegistry registry = registries.get(world.dimension());
+        if (registry != null && registry.world == world)
+            registries.remove(world.dimension());
+    }
+
+    /**
+     * Drops all registries, e.g. when the server stops.
+     */
+    public static void clear() {
+        registries.clear();
+    }
+
+    protected static long cellKey(double x, double z) {
+        int cellX = MathHelper.floor(x) >> CELL_SIZE_BITS;
+        int cellZ = MathHelper.floor(z) >> CELL_SIZE_BITS;
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+    //endregion Static Methods
+
+    //region Methods
+    public void add(ItemEntity item) {
+        if (this.cellByItem.containsKey(item))
+            return;
+        long key = cellKey(item.getX(), item.getZ());
+        this.cellByItem.put(item, key);
+        this.cells.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+    }
+
+    public void remove(ItemEntity item) {
+        Long key = this.cellByItem.remove(item);
+        if (key != null)
+            this.removeFromCell(key, item);
+        this.claims.remove(item);
+    }
+
+    /**
+     * Refreshes the cells while the registry is queried, so idle worlds only pay for join and leave events.
+     * Called at the end of each world tick.
+     */
+    public void tick() {
+        if (this.world.getGameTime() - this.lastQueryTime <= IDLE_TICKS)
+            this.refreshCells();
+    }
+
+    /**
+     * Moves items that left their grid cell and drops items that were removed without a leave event.
+     */
+    public void refreshCells() {
+        this.lastRefreshTime = this.world.getGameTime();
+        Iterator<Map.Entry<ItemEntity, Long>> iterator = this.cellByItem.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ItemEntity, Long> entry = iterator.next();
+            ItemEntity item = entry.getKey();
+            long oldKey = entry.getValue();
+            if (!item.isAlive()) {
+                iterator.remove();
+                this.removeFromCell(oldKey, item);
+                this.claims.remove(item);
+                continue;
+            }
+            long key = cellKey(item.getX(), item.getZ());
+            if (key != oldKey) {
+                entry.setValue(key);
+                this.removeFromCell(oldKey, item);
+                this.cells.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+            }
+        }
+    }
+
+    /**
+     * Finds the item closest to the given position within the given box that is not claimed by another entity and
+     * matches the filter. The filter is only evaluated in order of distance until the first match, so it may be
+     * expensive.
+     *
+     * @param box      the area to search.
+     * @param from     the position to measure distance from.
+     * @param claimant the entity searching, items claimed by it are still returned.
+     * @param filter   the filter items need to match.
+     * @return the closest matching item or null.
+     */
+    @Nullable
+    public ItemEntity findClosest(AxisAlignedBB box, Vector3d from, Entity claimant, Predicate<ItemEntity> filter) {
+        //cells were not refreshed while idle, catch up once
+        long time = this.world.getGameTime();
+        if (time - this.lastRefreshTime > 1)
+            this.refreshCells();
+        this.lastQueryTime = time;
+
+        int minCellX = MathHelper.floor(box.minX) >> CELL_SIZE_BITS;
+        int maxCellX = MathHelper.floor(box.maxX) >> CELL_SIZE_BITS;
+        int minCellZ = MathHelper.floor(box.minZ) >> CELL_SIZE_BITS;
+        int maxCellZ = MathHelper.floor(box.maxZ) >> CELL_SIZE_BITS;
+
+        List<ItemEntity> candidates = new ArrayList<>();
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                List<ItemEntity> cell = this.cells.get(((long) cellX << 32) | (cellZ & 0xFFFFFFFFL));
+                if (cell == null)
+                    continue;
+                for (ItemEntity item : cell) {
+                    if (item.isAlive() && box.contains(item.position()) && !this.isClaimedByOther(item, claimant))
+                        candidates.add(item);
+                }
+            }
+        }
+        if (candidates.isEmpty())
+            return null;
+
+        candidates.sort(Comparator.comparingDouble(item -> item.distanceToSqr(from)));
+        for (ItemEntity item : candidates) {
+            if (filter.test(item))
+                return item;
+        }
+        return null;
+    }
+
+    /**
+     * Claims the given item for the given entity, unless another live entity claimed it already.
+     *
+     * @param item     the item to claim.
+     * @param claimant the entity claiming the item.
+     * @return true if the item is now claimed by the claimant.
+     */
+    public boolean claim(ItemEntity item, Entity claimant) {
+        if (this.isClaimedByOther(item, claimant))
+            return false;
+        this.claims.put(item, claimant);
+        return true;
+    }
+
+    /**
+     * Releases the claim on the given item, if it is held by the given entity.
+     *
+     * @param item     the item to release.
+     * @param claimant the entity holding the claim.
+     */
+    public void release(ItemEntity item, Entity claimant) {
+        if (this.claims.get(item) == claimant)
+            this.claims.remove(item);
+    }
+
+    /**
+     * Releases all claims held by the given entity, e.g. because it left the world.
+     *
+     * @param claimant the entity holding the claims.
+     */
+    public void releaseAll(Entity claimant) {
+        this.claims.values().removeIf(entity -> entity == claimant);
+    }
+
+    /**
+     * Checks if the item is claimed by an entity other than the given one. Claims of removed or unloaded entities do
+     * not count, unloading an entity with its chunk does not mark it removed.
+     *
+     * @param item   the item.
+     * @param entity the entity.
+     * @return true if another live entity claimed the item.
+     */
+    public boolean isClaimedByOther(ItemEntity item, Entity entity) {
+        Entity claimant = this.claims.get(item);
+        return claimant != null && claimant != entity && claimant.isAlive() && claimant.isAddedToWorld();
+    }
+
+    protected void removeFromCell(long key, ItemEntity item) {
+        List<ItemEntity> cell = this.cells.get(key);
+        if (cell != null) {
+            cell.remove(item);
+            if (cell.isEmpty())
+                this.cells.remove(key);
+        }
+    }
+    //endregion Methods
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+/**
+ * Immutable item + nbt key used to index stacks that can be merged with each other.
+ * Counts are not part of the key.
+ */
+public class ItemStackKey {
+
+    //region Fields
+    protected final Item item;
+    protected final CompoundNBT tag;
+    protected final ItemStack prototype;
+    protected final int hash;
+    //endregion Fields
+
+    //region Initialization
+    protected ItemStackKey(Item item, CompoundNBT tag) {
+        this.item = item;
+        this.tag = tag;
+        this.prototype = new ItemStack(item, 1);
+        this.prototype.setTag(tag == null ? null : tag.copy());
+        this.hash = 31 * System.identityHashCode(item) + (tag == null ? 0 : tag.hashCode());
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Creates a key for the given stack. The nbt of the stack is copied, so later modifications of the stack do
+     * not affect the key.
+     *
+     * @param stack the stack to create the key for.
+     * @return the key, or null if the stack is empty.
+     */
+    public static ItemStackKey of(@Nonnull ItemStack stack) {
+        if (stack.isEmpty())
+            return null;
+        return new ItemStackKey(stack.getItem(), stack.getTag() == null ? null : stack.getTag().copy());
+    }
+    //endregion Static Methods
+
+    //region Getter / Setter
+    public Item getItem() {
+        return this.item;
+    }
+
+    /**
+     * @return a stack of size 1 representing this key. Do not modify!
+     */
+    public ItemStack getPrototype() {
+        return this.prototype;
+    }
+    //endregion Getter / Setter
+
+    //region Overrides
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ItemStackKey))
+            return false;
+        ItemStackKey other = (ItemStackKey) o;
+        return this.hash == other.hash && this.item == other.item && Objects.equals(this.tag, other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+    //endregion Overrides
+
+    //region Methods
+
+    /**
+     * Checks if the given stack belongs to this key without allocating a new key.
+     *
+     * @param stack the stack to check.
+     * @return true if item and nbt match.
+     */
+    public boolean matches(@Nonnull ItemStack stack) {
+        return !stack.isEmpty() && stack.getItem() == this.item && Objects.equals(this.tag, stack.getTag());
+    }
+
+    /**
+     * Creates a new stack for this key.
+     *
+     * @param count the size of the stack, clamped to the int range.
+     * @return the new stack.
+     */
+    public ItemStack createStack(long count) {
+        ItemStack stack = this.prototype.copy();
+        stack.setCount((int) Math.min(count, Integer.MAX_VALUE));
+        return stack;
+    }
+    //endregion Methods
+}
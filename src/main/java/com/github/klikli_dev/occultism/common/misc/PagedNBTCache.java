@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Serializes indexed contents in fixed-size pages and caches each page, so only pages that changed since the last
+ * save are serialized again.
+ */
+public class PagedNBTCache {
+
+    //region Fields
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    protected final int pageSize;
+    /**
+     * The cached page tags. These are shared with the nbt returned by serialize, so they are replaced, never modified.
+     */
+    protected List<ListNBT> pages = new ArrayList<>();
+    protected BitSet dirtyPages = new BitSet();
+    //endregion Fields
+
+    //region Initialization
+    public PagedNBTCache() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    public PagedNBTCache(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Calls the given consumer for each entry of paged nbt created by serialize.
+     *
+     * @param pages    the paged nbt.
+     * @param consumer the consumer to call for each entry.
+     */
+    public static void forEach(ListNBT pages, Consumer<CompoundNBT> consumer) {
+        for (int page = 0; page < pages.size(); page++) {
+            ListNBT entries = pages.getList(page);
+            for (int i = 0; i < entries.size(); i++) {
+                consumer.accept(entries.getCompound(i));
+            }
+        }
+    }
+    //endregion Static Methods
+
+    //region Methods
+
+    /**
+     * Marks the page containing the given index as changed.
+     *
+     * @param index the changed index.
+     */
+    public void markDirty(int index) {
+        if (index >= 0)
+            this.dirtyPages.set(index / this.pageSize);
+    }
+
+    /**
+     * Marks all pages from the page containing the given index as changed, used if contents shifted.
+     *
+     * @param index the first changed index.
+     */
+    public void markDirtyFrom(int index) {
+        int firstPage = Math.max(0, index / this.pageSize);
+        this.dirtyPages.set(firstPage, Math.max(firstPage + 1, this.pages.size()));
+    }
+
+    /**
+     * Drops all cached pages.
+     */
+    public void invalidate() {
+        this.pages.clear();
+        this.dirtyPages.clear();
+    }
+
+    /**
+     * Serializes the contents, only calling the writer for indices on pages that changed since the last call.
+     *
+     * @param size   the amount of indices.
+     * @param writer creates the entry for an index, may return null for empty indices.
+     * @return a list of pages, each a list of entries. Do not modify!
+     */
+    public ListNBT serialize(int size, IntFunction<CompoundNBT> writer) {
+        int pageCount = (size + this.pageSize - 1) / this.pageSize;
+        while (this.pages.size() > pageCount)
+            this.pages.remove(this.pages.size() - 1);
+
+        ListNBT result = new ListNBT();
+        for (int page = 0; page < pageCount; page++) {
+            if (page == this.pages.size())
+                this.pages.add(null);
+            ListNBT pageTag = this.pages.get(page);
+            if (pageTag == null || this.dirtyPages.get(page)) {
+                pageTag = new ListNBT();
+                int end = Math.min(size, (page + 1) * this.pageSize);
+                for (int index = page * this.pageSize; index < end; index++) {
+                    CompoundNBT entry = writer.apply(index);
+                    if (entry != null)
+                        pageTag.add(entry);
+                }
+                this.pages.set(page, pageTag);
+            }
+            result.add(pageTag);
+        }
+        this.dirtyPages.clear();
+        return result;
+    }
+    //endregion Methods
+}
@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only palette of item keys used to sync storage controller contents.
+ * The server assigns ids to keys, the client receives each new entry once and afterwards only ids and counts are
+ * sent. The epoch changes whenever the palette is reset, so receivers can tell if their copy is still valid.
+ */
+public class StackPalette {
+
+    //region Fields
+    /**
+     * Below this size the palette is never compacted, removed keys are cheap enough to keep.
+     */
+    public static final int MIN_COMPACT_SIZE = 1024;
+
+    protected final List<ItemStackKey> keys = new ArrayList<>();
+    protected final Map<ItemStackKey, Integer> ids = new HashMap<>();
+    protected int epoch;
+    //endregion Fields
+
+    //region Initialization
+    public StackPalette() {
+        this(-1);
+    }
+
+    public StackPalette(int epoch) {
+        this.epoch = epoch;
+    }
+    //endregion Initialization
+
+    //region Getter / Setter
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    public int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * @param id the palette id.
+     * @return the key for the id, or null if the id is unknown.
+     */
+    public ItemStackKey get(int id) {
+        return id >= 0 && id < this.keys.size() ? this.keys.get(id) : null;
+    }
+    //endregion Getter / Setter
+
+    //region Methods
+
+    /**
+     * Gets the id of the given key, adding it to the palette if needed.
+     *
+     * @param key the key.
+     * @return the palette id.
+     */
+    public int getOrAssign(ItemStackKey key) {
+        Integer id = this.ids.get(key);
+        if (id == null) {
+            id = this.keys.size();
+            this.keys.add(key);
+            this.ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Starts an update for a receiver that knows the palette up to the given size.
+     * Compact the palette before creating updates, not while an update is being built.
+     *
+     * @param knownEpoch the palette epoch the receiver has.
+     * @param knownSize  the amount of entries the receiver has.
+     * @return the update.
+     */
+    public Update createUpdate(int knownEpoch, int knownSize) {
+        boolean valid = knownEpoch == this.epoch && knownSize >= 0 && knownSize <= this.keys.size();
+        return new Update(this, valid ? knownSize : 0);
+    }
+
+    /**
+     * Appends a received entry.
+     *
+     * @param key the key to append.
+     */
+    public void add(ItemStackKey key) {
+        this.ids.putIfAbsent(key, this.keys.size());
+        this.keys.add(key);
+    }
+
+    /**
+     * Drops all entries from the given size on, used by receivers to get back in line with the sender.
+     *
+     * @param size the size to truncate to.
+     */
+    public void truncate(int size) {
+        while (this.keys.size() > size) {
+            ItemStackKey key = this.keys.remove(this.keys.size() - 1);
+            this.ids.remove(key, this.keys.size());
+        }
+    }
+
+    /**
+     * Clears the palette and starts a new epoch.
+     *
+     * @param epoch the new epoch.
+     */
+    public void reset(int epoch) {
+        this.keys.clear();
+        this.ids.clear();
+        this.epoch = epoch;
+    }
+
+    /**
+     * Resets the palette if it holds a lot more keys than are currently in use, as keys are never removed otherwise.
+     *
+     * @param usedKeys the amount of keys currently in use.
+     * @return true if the palette was reset.
+     */
+    public boolean compact(int usedKeys) {
+        if (this.keys.size() <= Math.max(MIN_COMPACT_SIZE, usedKeys * 2))
+            return false;
+        this.reset(this.epoch + 1);
+        return true;
+    }
+    //endregion Methods
+
+    /**
+     * Stacks encoded as palette ids, together with the palette entries the receiver does not know yet.
+     */
+    public static class Update {
+        //region Fields
+        protected final StackPalette palette;
+        protected final int start;
+        protected int[] stackIds = new int[16];
+        protected int[] stackCounts = new int[16];
+        protected int stackCount;
+        protected int[] removedIds = new int[16];
+        protected int removedCount;
+        //endregion Fields
+
+        //region Initialization
+        protected Update(StackPalette palette, int start) {
+            this.palette = palette;
+            this.start = start;
+        }
+        //endregion Initialization
+
+        //region Getter / Setter
+        public int getEpoch() {
+            return this.palette.getEpoch();
+        }
+
+        /**
+         * @return the first palette id that is sent with this update.
+         */
+        public int getStart() {
+            return this.start;
+        }
+
+        public int getStackCount() {
+            return this.stackCount;
+        }
+
+        public int[] getStackIds() {
+            return Arrays.copyOf(this.stackIds, this.stackCount);
+        }
+
+        public int[] getStackCounts() {
+            return Arrays.copyOf(this.stackCounts, this.stackCount);
+        }
+
+        public int[] getRemovedIds() {
+            return Arrays.copyOf(this.removedIds, this.removedCount);
+        }
+
+        /**
+         * Gets the palette entries the receiver does not know yet, call after all stacks have been added.
+         *
+         * @return the prototypes of the new entries. Do not modify!
+         */
+        public List<ItemStack> getNewEntries() {
+            List<ItemStack> entries = new ArrayList<>(this.palette.size() - this.start);
+            for (int i = this.start; i < this.palette.size(); i++) {
+                entries.add(this.palette.keys.get(i).getPrototype());
+            }
+            return entries;
+        }
+        //endregion Getter / Setter
+
+        //region Methods
+        public void addStack(ItemStackKey key, long count) {
+            if (this.stackCount == this.stackIds.length) {
+                this.stackIds = Arrays.copyOf(this.stackIds, this.stackCount * 2);
+                this.stackCounts = Arrays.copyOf(this.stackCounts, this.stackCount * 2);
+            }
+            this.stackIds[this.stackCount] = this.palette.getOrAssign(key);
+            this.stackCounts[this.stackCount] = (int) Math.min(count, Integer.MAX_VALUE);
+            this.stackCount++;
+        }
+
+        public void addRemoved(ItemStackKey key) {
+            if (this.removedCount == this.removedIds.length)
+                this.removedIds = Arrays.copyOf(this.removedIds, this.removedCount * 2);
+            this.removedIds[this.removedCount++] = this.palette.getOrAssign(key);
+        }
+        //endregion Methods
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.api.common.container.IStorageControllerItemHandler;
+import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Storage backend that keeps one entry with a total count per unique item instead of item stacks.
+ * The size limits the amount of unique item types, not stacks.
+ * Slots are exposed for compatibility: one slot per stored type plus one empty slot if another type fits.
+ */
+public class StorageControllerBulkItemHandler implements IStorageControllerItemHandler {
+
+    //region Fields
+    protected int maxTypes;
+    protected IStorageController storageController;
+
+    /**
+     * The stored keys in slot order. Removing a key moves the last key into its slot.
+     */
+    protected List<ItemStackKey> keys = new ArrayList<>();
+    protected Map<ItemStackKey, Integer> slotByKey = new HashMap<>();
+    /**
+     * The total amount stored per key, in order of first insertion.
+     */
+    protected Map<ItemStackKey, Long> totals = new LinkedHashMap<>();
+    protected Map<Item, Set<ItemStackKey>> keysByItem = new HashMap<>();
+    /**
+     * Keys whose total amount may have changed since the last call to pollChangedKeys.
+     */
+    protected Set<ItemStackKey> changedKeys = new LinkedHashSet<>();
+    protected PagedNBTCache nbtCache = new PagedNBTCache();
+    //endregion Fields
+
+    //region Initialization
+    public StorageControllerBulkItemHandler(IStorageController storageController, int maxTypes) {
+        this.storageController = storageController;
+        this.maxTypes = maxTypes;
+    }
+    //endregion Initialization
+
+    //region Getter / Setter
+    @Override
+    public void setSize(int size) {
+        if (size < 0)
+            return;
+        //types above the limit are kept, we just do not accept new ones until enough have been removed.
+        this.maxTypes = size;
+    }
+
+    @Override
+    public int getUsedSlots() {
+        return this.keys.size();
+    }
+
+    @Override
+    public long getCount(ItemStackKey key) {
+        return this.totals.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public Map<ItemStackKey, Long> getTotals() {
+        return Collections.unmodifiableMap(this.totals);
+    }
+    //endregion Getter / Setter
+
+    //region Overrides
+    @Override
+    public int getSlots() {
+        return this.keys.size() < this.maxTypes ? this.keys.size() + 1 : this.keys.size();
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack getStackInSlot(int slot) {
+        if (slot < 0 || slot >= this.keys.size())
+            return ItemStack.EMPTY;
+        ItemStackKey key = this.keys.get(slot);
+        return key.createStack(this.getCount(key));
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack insertItem(int slot, @Nonnull ItemStack stack, boolean simulate) {
+        //slots have no meaning for us, any slot accepts any item that fits.
+        return this.insertItemIndexed(stack, simulate);
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack extractItem(int slot, int amount, boolean simulate) {
+        if (amount <= 0 || slot < 0 || slot >= this.keys.size())
+            return ItemStack.EMPTY;
+        ItemStackKey key = this.keys.get(slot);
+        //external handlers expect at most a regular stack per extraction
+        int extracted = this.extractItemIndexed(key, Math.min(amount, key.getPrototype().getMaxStackSize()), simulate);
+        return extracted > 0 ? key.createStack(extracted) : ItemStack.EMPTY;
+    }
+
+    @Override
+    public int getSlotLimit(int slot) {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isItemValid(int slot, @Nonnull ItemStack stack) {
+        return true;
+    }
+
+    @Override
+    public Collection<ItemStackKey> getCandidateKeys(Predicate<ItemStack> comparator) {
+        if (comparator instanceof ItemStackComparator) {
+            Set<ItemStackKey> keys = this.keysByItem.get(((ItemStackComparator) comparator).getFilterStack().getItem());
+            return keys != null ? keys : Collections.emptySet();
+        }
+        return this.totals.keySet();
+    }
+
+    @Nonnull
+    @Override
+    public ItemStack insertItemIndexed(@Nonnull ItemStack stack, boolean simulate) {
+        if (stack.isEmpty())
+            return stack;
+
+        //a single lookup per operation, there are no slots to scan
+        this.storageController.getMetrics().recordInsert(1, simulate);
+        ItemStackKey key = this.getKey(stack);
+        if (key == null) {
+            if (this.keys.size() >= this.maxTypes)
+                return stack;
+            if (!simulate) {
+                key = ItemStackKey.of(stack);
+                this.addKey(key, stack.getCount());
+                this.onContentsChanged(key);
+            }
+            return ItemStack.EMPTY;
+        }
+
+        long count = this.getCount(key);
+        int inserted = (int) Math.min(stack.getCount(), Long.MAX_VALUE - count);
+        if (inserted <= 0)
+            return stack;
+        if (!simulate) {
+            this.totals.put(key, count + inserted);
+            this.onContentsChanged(key);
+        }
+        return inserted == stack.getCount() ? ItemStack.EMPTY : key.createStack(stack.getCount() - inserted);
+    }
+
+    @Override
+    public int extractItemIndexed(ItemStackKey key, int amount, boolean simulate) {
+        this.storageController.getMetrics().recordExtract(1, simulate);
+        long count = this.getCount(key);
+        if (count <= 0 || amount <= 0)
+            return 0;
+        int extracted = (int) Math.min(amount, count);
+        if (!simulate) {
+            if (extracted == count)
+                this.removeKey(key);
+            else
+                this.totals.put(key, count - extracted);
+            this.onContentsChanged(key);
+        }
+        return extracted;
+    }
+
+    @Override
+    public Set<ItemStackKey> pollChangedKeys() {
+        Set<ItemStackKey> result = this.changedKeys;
+        this.changedKeys = new LinkedHashSet<>();
+        return result;
+    }
+
+    @Override
+    public CompoundNBT serializeNBT() {
+        CompoundNBT nbt = new CompoundNBT();
+        nbt.put("EntryPages", this.nbtCache.serialize(this.keys.size(), this::serializeEntry));
+        nbt.putInt("Size", this.maxTypes);
+        return nbt;
+    }
+
+    @Override
+    public void deserializeNBT(CompoundNBT nbt) {
+        this.keys.clear();
+        this.slotByKey.clear();
+        this.totals.clear();
+        this.keysByItem.clear();
+        this.changedKeys.clear();
+        this.nbtCache.invalidate();
+        if (nbt.contains("Size", Constants.NBT.TAG_INT))
+            this.setSize(nbt.getInt("Size"));
+
+        PagedNBTCache.forEach(nbt.getList("EntryPages", Constants.NBT.TAG_LIST),
+                entryTag -> this.load(ItemStack.of(entryTag), entryTag.getLong("RealCount")));
+
+        //contents saved by the stack based handler are merged into one entry per type
+        PagedNBTCache.forEach(nbt.getList("Pages", Constants.NBT.TAG_LIST),
+                itemTag -> this.load(ItemStack.of(itemTag), itemTag.getInt("RealSize")));
+        ListNBT items = nbt.getList("Items", Constants.NBT.TAG_COMPOUND);
+        for (int i = 0; i < items.size(); i++) {
+            CompoundNBT itemTag = items.getCompound(i);
+            this.load(ItemStack.of(itemTag), itemTag.getInt("RealSize"));
+        }
+    }
+    //endregion Overrides
+
+    //region Methods
+
+    /**
+     * Gets the stored key for the given stack without allocating a new key.
+     *
+     * @param stack the stack to get the key for.
+     * @return the stored key or null.
+     */
+    protected ItemStackKey getKey(ItemStack stack) {
+        Set<ItemStackKey> candidates = this.keysByItem.get(stack.getItem());
+        if (candidates != null) {
+            for (ItemStackKey key : candidates) {
+                if (key.matches(stack))
+                    return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the nbt entry for the given slot.
+     *
+     * @param slot the slot to serialize.
+     * @return the entry.
+     */
+    protected CompoundNBT serializeEntry(int slot) {
+        ItemStackKey key = this.keys.get(slot);
+        CompoundNBT entryTag = new CompoundNBT();
+        key.getPrototype().save(entryTag);
+        entryTag.putLong("RealCount", this.getCount(key));
+        return entryTag;
+    }
+
+    protected void load(ItemStack prototype, long count) {
+        if (prototype.isEmpty() || count <= 0)
+            return;
+        ItemStackKey key = this.getKey(prototype);
+        if (key == null)
+            this.addKey(ItemStackKey.of(prototype), count);
+        else
+            this.totals.put(key, this.getCount(key) + count);
+    }
+
+    protected void addKey(ItemStackKey key, long count) {
+        this.nbtCache.markDirty(this.keys.size());
+        this.slotByKey.put(key, this.keys.size());
+        this.keys.add(key);
+        this.totals.put(key, count);
+        this.keysByItem.computeIfAbsent(key.getItem(), i -> new LinkedHashSet<>()).add(key);
+    }
+
+    protected void removeKey(ItemStackKey key) {
+        this.totals.remove(key);
+        Integer slot = this.slotByKey.remove(key);
+        if (slot != null) {
+            this.nbtCache.markDirty(slot);
+            this.nbtCache.markDirty(this.keys.size() - 1);
+            //move the last key into the freed slot so slots stay dense
+            ItemStackKey last = this.keys.remove(this.keys.size() - 1);
+            if (!last.equals(key)) {
+                this.keys.set(slot, last);
+                this.slotByKey.put(last, slot);
+            }
+        }
+        Set<ItemStackKey> keys = this.keysByItem.get(key.getItem());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty())
+                this.keysByItem.remove(key.getItem());
+        }
+    }
+
+    protected void onContentsChanged(ItemStackKey key) {
+        Integer slot = this.slotByKey.get(key);
+        if (slot != null)
+            this.nbtCache.markDirty(slot);
+        this.changedKeys.add(key);
+        this.storageController.onContentsChanged();
+    }
+    //endregion Methods
+}
@@ -22,8 +22,10 @@
 
 package com.github.klikli_dev.occultism.common.misc;
 
+import com.github.klikli_dev.occultism.api.common.container.IStorageControllerItemHandler;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
 import com.github.klikli_dev.occultism.common.data.NonNullArrayList;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
@@ -32,15 +34,41 @@ import net.minecraftforge.items.ItemHandlerHelper;
 import net.minecraftforge.items.ItemStackHandler;
 
 import javax.annotation.Nonnull;
-import java.util.Collections;
+import java.util.*;
+import java.util.function.Predicate;
 
-public class StorageControllerItemStackHandler extends ItemStackHandler {
+public class StorageControllerItemStackHandler extends ItemStackHandler implements IStorageControllerItemHandler {
 
     //region Fields
     protected int maxStackSize;
     protected int maxSlots;
     protected boolean overrideItemStackSizes;
     protected IStorageController storageController;
+
+    /**
+     * The key currently stored in each slot, parallel to stacks. Null for empty slots.
+     */
+    protected List<ItemStackKey> slotKeys = new ArrayList<>();
+    /**
+     * The count last seen in each slot, parallel to stacks. Used to keep totals up to date.
+     */
+    protected int[] slotCounts = new int[0];
+    protected Map<ItemStackKey, TreeSet<Integer>> slotsByKey = new LinkedHashMap<>();
+    /**
+     * The total amount stored per key, in order of first insertion.
+     */
+    protected Map<ItemStackKey, Long> totals = new LinkedHashMap<>();
+    protected int usedSlots;
+    protected Map<Item, Set<ItemStackKey>> keysByItem = new HashMap<>();
+    /**
+     * Empty slots within maxSlots, sorted so we fill the handler from the start.
+     */
+    protected TreeSet<Integer> freeSlots = new TreeSet<>();
+    /**
+     * Keys whose total amount may have changed since the last call to pollChangedKeys.
+     */
+    protected Set<ItemStackKey> changedKeys = new LinkedHashSet<>();
+    protected PagedNBTCache nbtCache = new PagedNBTCache();
     //endregion Fields
 
     //region Initialization
@@ -52,6 +80,7 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
         this.maxSlots = size;
         this.maxStackSize = maxStackSize;
         this.overrideItemStackSizes = overrideItemStackSizes;
+        this.rebuildIndex();
     }
     //endregion Initialization
 
@@ -71,7 +100,9 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
         //if list got smaller we prune what wer can, the rest is removed ony by one when a full stack is removed
         else if (size < this.stacks.size()) {
             this.prune();
+            return;
         }
+        this.rebuildIndex();
     }
 
     @Nonnull
@@ -89,8 +120,12 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
 
         if (!simulate && this.stacks.size() > this.maxSlots) {
             //in real mode if we are above desired size, delete empty slots.
-            if (this.stacks.get(slot).isEmpty())
+            if (this.stacks.get(slot).isEmpty()) {
                 this.stacks.remove(slot);
+                //all following slots moved, so the index needs to be recreated.
+                this.rebuildIndex();
+                this.nbtCache.markDirtyFrom(slot);
+            }
         }
 
         return result;
@@ -150,19 +185,8 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
 
     @Override
     public CompoundNBT serializeNBT() {
-        ListNBT nbtTagList = new ListNBT();
-        for (int i = 0; i < this.stacks.size(); i++) {
-            if (!this.stacks.get(i).isEmpty()) {
-                CompoundNBT itemTag = new CompoundNBT();
-                ItemStack stack = this.stacks.get(i);
-                itemTag.putInt("Slot", i);
-                stack.save(itemTag);
-                itemTag.putInt("RealSize", stack.getCount());
-                nbtTagList.add(itemTag);
-            }
-        }
         CompoundNBT nbt = new CompoundNBT();
-        nbt.put("Items", nbtTagList);
+        nbt.put("Pages", this.nbtCache.serialize(this.stacks.size(), this::serializeSlot));
         nbt.putInt("Size", this.stacks.size());
         return nbt;
     }
@@ -170,22 +194,44 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
     @Override
     public void deserializeNBT(CompoundNBT nbt) {
         this.setSize(nbt.contains("Size", Constants.NBT.TAG_INT) ? nbt.getInt("Size") : this.stacks.size());
+        PagedNBTCache.forEach(nbt.getList("Pages", Constants.NBT.TAG_LIST), this::deserializeSlot);
+        //contents saved before paging was introduced
         ListNBT tagList = nbt.getList("Items", Constants.NBT.TAG_COMPOUND);
         for (int i = 0; i < tagList.size(); i++) {
-            CompoundNBT itemTags = tagList.getCompound(i);
-            int slot = itemTags.getInt("Slot");
+            this.deserializeSlot(tagList.getCompound(i));
+        }
 
-            if (slot >= 0 && slot < this.stacks.size()) {
-                ItemStack stack = ItemStack.of(itemTags);
-                stack.setCount(itemTags.getInt("RealSize"));
-                this.stacks.set(slot, stack);
+        //contents saved by the bulk handler are split into stacks, if they do not fit we are oversized until extracted.
+        int[] freeSlot = {0};
+        PagedNBTCache.forEach(nbt.getList("EntryPages", Constants.NBT.TAG_LIST), entryTag -> {
+            ItemStack prototype = ItemStack.of(entryTag);
+            if (prototype.isEmpty())
+                return;
+            int limit = this.getStackLimit(-1, prototype);
+            long remaining = entryTag.getLong("RealCount");
+            while (remaining > 0) {
+                while (freeSlot[0] < this.stacks.size() && !this.stacks.get(freeSlot[0]).isEmpty())
+                    freeSlot[0]++;
+                if (freeSlot[0] == this.stacks.size())
+                    this.stacks.add(ItemStack.EMPTY);
+                int count = (int) Math.min(remaining, limit);
+                this.stacks.set(freeSlot[0], ItemHandlerHelper.copyStackWithSize(prototype, count));
+                remaining -= count;
             }
-        }
+        });
         this.onLoad();
     }
 
+    @Override
+    protected void onLoad() {
+        this.rebuildIndex();
+        this.nbtCache.invalidate();
+    }
+
     @Override
     protected void onContentsChanged(int slot) {
+        this.nbtCache.markDirty(slot);
+        this.updateIndex(slot);
         this.storageController.onContentsChanged();
     }
 
@@ -196,6 +242,234 @@ public class StorageControllerItemStackHandler extends ItemStackHandler {
             if (this.stacks.get(i).isEmpty())
                 this.stacks.remove(i);
         }
+        this.rebuildIndex();
+        this.nbtCache.invalidate();
+    }
+
+    /**
+     * For item stack comparators only keys of the filtered item are returned, ordered by their first slot, so the
+     * first match is the same as when scanning the slots in order. Otherwise all keys are returned.
+     */
+    @Override
+    public Collection<ItemStackKey> getCandidateKeys(Predicate<ItemStack> comparator) {
+        if (comparator instanceof ItemStackComparator) {
+            Set<ItemStackKey> keys = this.keysByItem.get(((ItemStackComparator) comparator).getFilterStack().getItem());
+            if (keys == null)
+                return Collections.emptySet();
+            if (keys.size() == 1)
+                return keys;
+            List<ItemStackKey> sorted = new ArrayList<>(keys);
+            sorted.sort(Comparator.comparingInt(key -> this.slotsByKey.get(key).first()));
+            return sorted;
+        }
+        return this.slotsByKey.keySet();
+    }
+
+    @Override
+    public long getCount(ItemStackKey key) {
+        return this.totals.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public Map<ItemStackKey, Long> getTotals() {
+        return Collections.unmodifiableMap(this.totals);
+    }
+
+    /**
+     * Inserts the given stack, first topping up slots that already hold the same item, then using free slots.
+     */
+    @Nonnull
+    @Override
+    public ItemStack insertItemIndexed(@Nonnull ItemStack stack, boolean simulate) {
+        if (stack.isEmpty())
+            return stack;
+
+        ItemStack remaining = stack;
+        int slotsScanned = 0;
+        try {
+            TreeSet<Integer> slots = this.slotsByKey.get(ItemStackKey.of(stack));
+            if (slots != null) {
+                //inserting into an already filled slot never changes the key, so the set is not modified during iteration
+                for (int slot : slots) {
+                    slotsScanned++;
+                    remaining = this.insertItem(slot, remaining, simulate);
+                    if (remaining.isEmpty())
+                        return ItemStack.EMPTY;
+                }
+            }
+
+            //now fill free slots, in real mode each filled slot is removed from the free slots so we look up the next one
+            Integer slot = this.freeSlots.isEmpty() ? null : this.freeSlots.first();
+            while (slot != null) {
+                slotsScanned++;
+                remaining = this.insertItem(slot, remaining, simulate);
+                if (remaining.isEmpty())
+                    return ItemStack.EMPTY;
+                slot = this.freeSlots.higher(slot);
+            }
+            return remaining;
+        } finally {
+            this.storageController.getMetrics().recordInsert(slotsScanned, simulate);
+        }
+    }
+
+    /**
+     * Extracts up to the given amount of the given key, only touching slots that hold the key.
+     */
+    @Override
+    public int extractItemIndexed(ItemStackKey key, int amount, boolean simulate) {
+        TreeSet<Integer> slots = this.slotsByKey.get(key);
+        if (slots == null || amount <= 0)
+            return 0;
+
+        //work on a copy in descending order: extraction may remove slots from the index or, if we are oversized,
+        //remove the slot from the handler which only shifts slots after it.
+        int[] snapshot = new int[slots.size()];
+        int index = 0;
+        for (Iterator<Integer> it = slots.descendingIterator(); it.hasNext(); ) {
+            snapshot[index++] = it.next();
+        }
+
+        int remaining = amount;
+        int slotsScanned = 0;
+        for (int slot : snapshot) {
+            slotsScanned++;
+            if (slot >= this.stacks.size())
+                continue;
+            if (!key.matches(this.stacks.get(slot))) {
+                //someone modified the stack without notifying us, so we fix the index and move on.
+                this.updateIndex(slot);
+                continue;
+            }
+            remaining -= this.extractItem(slot, remaining, simulate).getCount();
+            if (remaining <= 0)
+                break;
+        }
+        this.storageController.getMetrics().recordExtract(slotsScanned, simulate);
+        return amount - remaining;
+    }
+
+    @Override
+    public int getUsedSlots() {
+        return this.usedSlots;
+    }
+
+    @Override
+    public Set<ItemStackKey> pollChangedKeys() {
+        Set<ItemStackKey> result = this.changedKeys;
+        this.changedKeys = new LinkedHashSet<>();
+        return result;
+    }
+
+    /**
+     * Creates the nbt entry for the given slot.
+     *
+     * @param slot the slot to serialize.
+     * @return the entry or null if the slot is empty.
+     */
+    protected CompoundNBT serializeSlot(int slot) {
+        ItemStack stack = this.stacks.get(slot);
+        if (stack.isEmpty())
+            return null;
+        CompoundNBT itemTag = new CompoundNBT();
+        itemTag.putInt("Slot", slot);
+        stack.save(itemTag);
+        itemTag.putInt("RealSize", stack.getCount());
+        return itemTag;
+    }
+
+    protected void deserializeSlot(CompoundNBT itemTag) {
+        int slot = itemTag.getInt("Slot");
+        if (slot >= 0 && slot < this.stacks.size()) {
+            ItemStack stack = ItemStack.of(itemTag);
+            stack.setCount(itemTag.getInt("RealSize"));
+            this.stacks.set(slot, stack);
+        }
+    }
+
+    /**
+     * Recreates the item index from scratch.
+     */
+    public void rebuildIndex() {
+        this.slotKeys = new ArrayList<>(Collections.nCopies(this.stacks.size(), null));
+        this.slotCounts = new int[this.stacks.size()];
+        this.slotsByKey.clear();
+        this.keysByItem.clear();
+        this.totals.clear();
+        this.usedSlots = 0;
+        this.freeSlots.clear();
+        for (int slot = 0; slot < this.stacks.size(); slot++) {
+            ItemStack stack = this.stacks.get(slot);
+            this.addToIndex(slot, ItemStackKey.of(stack), stack.getCount());
+        }
+    }
+
+    /**
+     * Updates the index for the given slot after its contents changed.
+     *
+     * @param slot the changed slot.
+     */
+    protected void updateIndex(int slot) {
+        if (slot < 0 || slot >= this.stacks.size() || slot >= this.slotKeys.size())
+            return;
+
+        ItemStack stack = this.stacks.get(slot);
+        ItemStackKey previous = this.slotKeys.get(slot);
+        if (previous != null)
+            this.changedKeys.add(previous);
+        if (previous == null ? stack.isEmpty() : previous.matches(stack)) {
+            //only the count changed
+            if (previous != null) {
+                this.totals.merge(previous, (long) (stack.getCount() - this.slotCounts[slot]), Long::sum);
+                this.slotCounts[slot] = stack.getCount();
+            }
+            return;
+        }
+
+        this.removeFromIndex(slot, previous);
+        ItemStackKey key = ItemStackKey.of(stack);
+        this.addToIndex(slot, key, stack.getCount());
+        if (key != null)
+            this.changedKeys.add(key);
+    }
+
+    protected void addToIndex(int slot, ItemStackKey key, int count) {
+        this.slotKeys.set(slot, key);
+        if (key == null) {
+            if (slot < this.maxSlots)
+                this.freeSlots.add(slot);
+            return;
+        }
+        this.slotCounts[slot] = count;
+        this.totals.merge(key, (long) count, Long::sum);
+        this.usedSlots++;
+        this.slotsByKey.computeIfAbsent(key, k -> new TreeSet<>()).add(slot);
+        this.keysByItem.computeIfAbsent(key.getItem(), i -> new LinkedHashSet<>()).add(key);
+    }
+
+    protected void removeFromIndex(int slot, ItemStackKey key) {
+        this.slotKeys.set(slot, null);
+        if (key == null) {
+            this.freeSlots.remove(slot);
+            return;
+        }
+        this.totals.merge(key, (long) -this.slotCounts[slot], Long::sum);
+        this.slotCounts[slot] = 0;
+        this.usedSlots--;
+        TreeSet<Integer> slots = this.slotsByKey.get(key);
+        if (slots != null) {
+            slots.remove(slot);
+            if (slots.isEmpty()) {
+                this.slotsByKey.remove(key);
+                this.totals.remove(key);
+                Set<ItemStackKey> keys = this.keysByItem.get(key.getItem());
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty())
+                        this.keysByItem.remove(key.getItem());
+                }
+            }
+        }
     }
     //endregion Methods
 
@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operation counters of a single storage controller, used to find out which controllers are expensive.
+ * Counters are only written on the server thread, but may be read from other threads, e.g. via JMX.
+ */
+public class StorageControllerMetrics {
+
+    //region Fields
+    protected final AtomicLong inserts = new AtomicLong();
+    protected final AtomicLong extracts = new AtomicLong();
+    /**
+     * The slots (or item types for bulk storage) visited by inserts and extracts.
+     */
+    protected final AtomicLong slotsScanned = new AtomicLong();
+    /**
+     * Simulated inserts and extracts, e.g. from crafting or item pickup checks. Counted apart from real operations.
+     */
+    protected final AtomicLong simulations = new AtomicLong();
+    /**
+     * The slots visited by simulated inserts and extracts.
+     */
+    protected final AtomicLong simulatedSlotsScanned = new AtomicLong();
+    protected final AtomicLong snapshotRebuilds = new AtomicLong();
+    /**
+     * The item types copied while rebuilding snapshots.
+     */
+    protected final AtomicLong snapshotEntries = new AtomicLong();
+    protected final AtomicLong stackUpdatesSent = new AtomicLong();
+    protected final AtomicLong bytesSent = new AtomicLong();
+    /**
+     * The packets produced for stack updates too large for a single packet, see PacketSplitter.
+     */
+    protected final AtomicLong splitPackets = new AtomicLong();
+    protected final AtomicLong saves = new AtomicLong();
+    protected final AtomicLong saveNanos = new AtomicLong();
+    protected volatile long startMillis = System.currentTimeMillis();
+    //endregion Fields
+
+    //region Getter / Setter
+    public long getInserts() {
+        return this.inserts.get();
+    }
+
+    public long getExtracts() {
+        return this.extracts.get();
+    }
+
+    public long getSlotsScanned() {
+        return this.slotsScanned.get();
+    }
+
+    public long getSimulations() {
+        return this.simulations.get();
+    }
+
+    public long getSimulatedSlotsScanned() {
+        return this.simulatedSlotsScanned.get();
+    }
+
+    public long getSnapshotRebuilds() {
+        return this.snapshotRebuilds.get();
+    }
+
+    public long getSnapshotEntries() {
+        return this.snapshotEntries.get();
+    }
+
+    public long getStackUpdatesSent() {
+        return this.stackUpdatesSent.get();
+    }
+
+    public long getBytesSent() {
+        return this.bytesSent.get();
+    }
+
+    public long getSplitPackets() {
+        return this.splitPackets.get();
+    }
+
+    public long getSaves() {
+        return this.saves.get();
+    }
+
+    public long getSaveNanos() {
+        return this.saveNanos.get();
+    }
+
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+    //endregion Getter / Setter
+
+    //region Methods
+    public void recordInsert(int slotsScanned, boolean simulate) {
+        if (simulate)
+            this.recordSimulation(slotsScanned);
+        else {
+            this.inserts.incrementAndGet();
+            this.slotsScanned.addAndGet(slotsScanned);
+        }
+    }
+
+    public void recordExtract(int slotsScanned, boolean simulate) {
+        if (simulate)
+            this.recordSimulation(slotsScanned);
+        else {
+            this.extracts.incrementAndGet();
+            this.slotsScanned.addAndGet(slotsScanned);
+        }
+    }
+
+    public void recordSnapshotRebuild(int entries) {
+        this.snapshotRebuilds.incrementAndGet();
+        this.snapshotEntries.addAndGet(entries);
+    }
+
+    /**
+     * @param bytes   the encoded size of the stack update.
+     * @param packets the amount of packets the update was sent as, more than one if it had to be split.
+     */
+    public void recordStackUpdateSent(int bytes, int packets) {
+        this.stackUpdatesSent.incrementAndGet();
+        this.bytesSent.addAndGet(bytes);
+        if (packets > 1)
+            this.splitPackets.addAndGet(packets);
+    }
+
+    public void recordSave(long nanos) {
+        this.saves.incrementAndGet();
+        this.saveNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Rough estimate of the work caused by this controller, in units of about one slot visit.
+     * Only used to rank controllers against each other. Slots visited by simulations are included, they cost the
+     * same as real operations.
+     *
+     * @return the estimated cost.
+     */
+    public long getCost() {
+        return this.getSlotsScanned() + this.getSimulatedSlotsScanned() + this.getSnapshotEntries() + this.getBytesSent() / 16 + this.getSaveNanos() / 1000;
+    }
+
+    public void reset() {
+        this.inserts.set(0);
+        this.extracts.set(0);
+        this.slotsScanned.set(0);
+        this.simulations.set(0);
+        this.simulatedSlotsScanned.set(0);
+        this.snapshotRebuilds.set(0);
+        this.snapshotEntries.set(0);
+        this.stackUpdatesSent.set(0);
+        this.bytesSent.set(0);
+        this.splitPackets.set(0);
+        this.saves.set(0);
+        this.saveNanos.set(0);
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    protected void recordSimulation(int slotsScanned) {
+        this.simulations.incrementAndGet();
+        this.simulatedSlotsScanned.addAndGet(slotsScanned);
+    }
+    //endregion Methods
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.common.tile.StorageControllerTileEntity;
+import org.apache.logging.log4j.LogManager;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Keeps track of the loaded storage controllers so their metrics can be ranked, see {@link StorageControllerMetrics}.
+ * Optionally exposes the ranking as JMX MBean.
+ */
+public class StorageControllerMetricsRegistry {
+
+    //region Fields
+    public static final String MBEAN_NAME = "com.github.klikli_dev.occultism:type=StorageControllers";
+    /**
+     * Weak, so controllers that are not unregistered properly do not leak.
+     */
+    private static final Set<StorageControllerTileEntity> controllers =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static ObjectName registeredMBean;
+    //endregion Fields
+
+    //region Static Methods
+    public static void register(StorageControllerTileEntity controller) {
+        controllers.add(controller);
+    }
+
+    public static void unregister(StorageControllerTileEntity controller) {
+        controllers.remove(controller);
+    }
+
+    public static int getControllerCount() {
+        return controllers.size();
+    }
+
+    /**
+     * @param limit the maximum amount of controllers to return.
+     * @return the loaded controllers with the highest estimated cost, most expensive first.
+     */
+    public static List<StorageControllerTileEntity> getTop(int limit) {
+        List<StorageControllerTileEntity> result;
+        synchronized (controllers) {
+            result = new ArrayList<>(controllers);
+        }
+        result.sort(Comparator.comparingLong(
+                (StorageControllerTileEntity controller) -> controller.getMetrics().getCost()).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    public static void resetAll() {
+        synchronized (controllers) {
+            for (StorageControllerTileEntity controller : controllers) {
+                controller.getMetrics().reset();
+            }
+        }
+    }
+
+    /**
+     * @param controller the controller to describe.
+     * @return a single line summary of the metrics of the given controller.
+     */
+    public static String describe(StorageControllerTileEntity controller) {
+        StorageControllerMetrics metrics = controller.getMetrics();
+        long seconds = Math.max(1, (System.currentTimeMillis() - metrics.getStartMillis()) / 1000);
+        return String.format("%s cost=%d (%d/s) inserts=%d extracts=%d slotsScanned=%d simulations=%d(%d slots) snapshots=%d(%d entries) " +
+                        "updates=%d bytes=%d splitPackets=%d saves=%d(%.1fms)",
+                controller.getLinkedStorageControllerPosition(), metrics.getCost(), metrics.getCost() / seconds,
+                metrics.getInserts(), metrics.getExtracts(), metrics.getSlotsScanned(), metrics.getSimulations(),
+                metrics.getSimulatedSlotsScanned(),
+                metrics.getSnapshotRebuilds(), metrics.getSnapshotEntries(), metrics.getStackUpdatesSent(),
+                metrics.getBytesSent(), metrics.getSplitPackets(), metrics.getSaves(), metrics.getSaveNanos() / 1.0e6);
+    }
+
+    public static synchronized void registerMBean() {
+        if (registeredMBean != null)
+            return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(new StorageControllers(), name);
+            registeredMBean = name;
+        } catch (Exception e) {
+            LogManager.getLogger().warn("Could not register storage controller metrics MBean.", e);
+        }
+    }
+
+    public static synchronized void unregisterMBean() {
+        if (registeredMBean == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredMBean);
+        } catch (Exception e) {
+            LogManager.getLogger().warn("Could not unregister storage controller metrics MBean.", e);
+        }
+        registeredMBean = null;
+    }
+    //endregion Static Methods
+
+    public interface StorageControllersMXBean {
+        //region Getter / Setter
+        int getControllerCount();
+
+        String[] getTopControllers();
+        //endregion Getter / Setter
+
+        //region Methods
+        void reset();
+        //endregion Methods
+    }
+
+    public static class StorageControllers implements StorageControllersMXBean {
+        //region Fields
+        private static final int TOP_CONTROLLERS = 20;
+        //endregion Fields
+
+        //region Overrides
+        @Override
+        public int getControllerCount() {
+            return StorageControllerMetricsRegistry.getControllerCount();
+        }
+
+        @Override
+        public String[] getTopControllers() {
+            return getTop(TOP_CONTROLLERS).stream().map(StorageControllerMetricsRegistry::describe).toArray(String[]::new);
+        }
+
+        @Override
+        public void reset() {
+            resetAll();
+        }
+        //endregion Overrides
+    }
+}
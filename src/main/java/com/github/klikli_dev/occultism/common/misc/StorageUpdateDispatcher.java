@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.Occultism;
+import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
+import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import com.github.klikli_dev.occultism.network.MessageUpdateStacks;
+import com.github.klikli_dev.occultism.network.StorageSyncWorker;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.TileEntity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces storage controller stack updates.
+ * Instead of sending a message for every change, viewers are marked dirty and updated once at the end of the server
+ * tick (or every storage.controllerUpdateInterval ticks). Viewers of the same controller that are at the same stacks
+ * version, view and palette share one message, so it is only built and compressed once.
+ * Must only be used on the logical server thread.
+ */
+public class StorageUpdateDispatcher {
+
+    //region Fields
+    protected static final Map<ServerPlayerEntity, IStorageController> pendingUpdates = new LinkedHashMap<>();
+    //endregion Fields
+
+    //region Static Methods
+
+    /**
+     * Marks the given player as needing an update of the given storage controller stacks.
+     *
+     * @param player            the player to update.
+     * @param storageController the storage controller to send the stacks of.
+     */
+    public static void markDirty(ServerPlayerEntity player, IStorageController storageController) {
+        if (storageController != null)
+            pendingUpdates.put(player, storageController);
+    }
+
+    /**
+     * Sends all pending updates, if the configured update interval has passed.
+     *
+     * @param server the server that is ticking.
+     */
+    public static void onServerTickEnd(MinecraftServer server) {
+        if (pendingUpdates.isEmpty())
+            return;
+        int interval = Occultism.SERVER_CONFIG.storage.controllerUpdateInterval.get();
+        if (interval > 1 && server.getTickCount() % interval != 0)
+            return;
+        flush(server);
+    }
+
+    /**
+     * Sends all pending updates now.
+     * The messages are handed to the storage sync worker and sent once they are compressed.
+     *
+     * @param server the server to send on.
+     */
+    public static void flush(MinecraftServer server) {
+        //messages built during this flush, by controller, view and the version the receiver has.
+        Map<List<Object>, MessageUpdateStacks> messages = new HashMap<>();
+        for (Map.Entry<ServerPlayerEntity, IStorageController> entry : pendingUpdates.entrySet()) {
+            ServerPlayerEntity player = entry.getKey();
+            IStorageController storageController = entry.getValue();
+            if (player.hasDisconnected() || ((TileEntity) storageController).isRemoved())
+                continue;
+
+            if (player.containerMenu instanceof IStorageControllerContainer) {
+                IStorageControllerContainer container = (IStorageControllerContainer) player.containerMenu;
+                //the stacks version of the container refers to its own controller, which may have changed since.
+                if (container.getStorageController() != storageController)
+                    continue;
+                List<Object> key = Arrays.asList(storageController, container.getStorageView(),
+                        container.getStacksVersion(), container.getPaletteEpoch(), container.getPaletteSize());
+                MessageUpdateStacks message;
+                if (messages.containsKey(key)) {
+                    message = messages.get(key);
+                } else {
+                    message = container.getStorageView() != null ?
+                            storageController.getMessageUpdateStackView(container.getStorageView(),
+                                    container.getStacksVersion(), container.getPaletteEpoch(), container.getPaletteSize()) :
+                            storageController.getMessageUpdateStacks(container.getStacksVersion(),
+                                    container.getPaletteEpoch(), container.getPaletteSize());
+                    messages.put(key, message);
+                }
+                //null means the client is already up to date
+                if (message != null) {
+                    container.setStacksVersion(message.getVersion());
+                    container.setPalette(message.getPaletteEpoch(), message.getPaletteSize());
+                    StorageSyncWorker.sendWhenReady(server, player, message, storageController.getMetrics());
+                }
+            } else {
+                //full snapshots are cached by the controller
+                StorageSyncWorker.sendWhenReady(server, player, storageController.getMessageUpdateStacks(),
+                        storageController.getMetrics());
+            }
+        }
+        pendingUpdates.clear();
+    }
+
+    /**
+     * Drops all pending updates, e.g. when the server stops.
+     */
+    public static void clear() {
+        pendingUpdates.clear();
+    }
+    //endregion Static Methods
+}
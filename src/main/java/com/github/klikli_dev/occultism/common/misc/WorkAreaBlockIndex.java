@@ -0,0 +1,504 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.common.misc;
+
+import com.github.klikli_dev.occultism.registry.OccultismTags;
+import net.minecraft.block.BlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraftforge.items.CapabilityItemHandler;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Shared index of blocks spirits are interested in, per world and chunk section.
+ * Only sections within the work area of at least one subscription are indexed. They are scanned once when the
+ * subscription is created or the chunk is loaded, spread over multiple ticks, and then kept up to date by block
+ * change events. Spirits with overlapping work areas share the same sections instead of each scanning on their own.
+ * <p>
+ * Block changes that bypass neighbor notifications are not seen, so users should still validate blocks before acting
+ * on them.
+ */
+public class WorkAreaBlockIndex {
+
+    //region Fields
+    /**
+     * The approximate amount of blocks scanned per tick and world.
+     */
+    public static final int SCAN_BLOCKS_PER_TICK = 16 * 16 * 16 * 4;
+    /**
+     * Cost of skipping a section, relative to checking a single block.
+     */
+    protected static final int SKIPPED_SECTION_COST = 16;
+
+    private static final Map<RegistryKey<World>, WorkAreaBlockIndex> indexes = new HashMap<>();
+
+    protected final World world;
+    protected final Map<Long, Section> sections = new HashMap<>();
+    /**
+     * Tracked sections in loaded chunks that still need their initial scan.
+     */
+    protected final Deque<Long> pendingScans = new ArrayDeque<>();
+    /**
+     * Positions changed since the last tick, processed in bulk so each position is only classified once.
+     */
+    protected final Set<BlockPos> changedPositions = new HashSet<>();
+    protected final List<Subscription> subscriptions = new ArrayList<>();
+    //endregion Fields
+
+    //region Initialization
+    protected WorkAreaBlockIndex(World world) {
+        this.world = world;
+    }
+    //endregion Initialization
+
+    //region Static Methods
+
+    /**
+     * Gets the index for the given world, creating it if needed. Server worlds only.
+     *
+     * @param world the world.
+     * @return the index.
+     */
+    public static WorkAreaBlockIndex get(World world) {
+        return indexes.computeIfAbsent(world.dimension(), key -> new WorkAreaBlockIndex(world));
+    }
+
+    /**
+     * Gets the index for the given world, if one was created.
+     *
+     * @param world the world.
+     * @return the index or null.
+     */
+    @Nullable
+    public static WorkAreaBlockIndex getIfPresent(World world) {
+        WorkAreaBlockIndex index = indexes.get(world.dimension());
+        return index != null && index.world == world ? index : null;
+    }
+
+    public static void remove(World world) {
+        WorkAreaBlockIndex index = indexes.get(world.dimension());
+        if (index != null && index.world == world)
+            indexes.remove(world.dimension());
+    }
+
+    /**
+     * Drops all indexes, e.g. when the server stops.
+     */
+    public static void clear() {
+        indexes.clear();
+    }
+    //endregion Static Methods
+
+    //region Methods
+
+    /**
+     * Subscribes to the given category within the given area. The subscription keeps the matching blocks up to date
+     * until it is cancelled or the owner is removed or unloaded.
+     *
+     * @param owner    the entity the subscription belongs to, it is cancelled once the entity is removed or unloaded.
+     * @param category the category of blocks to follow.
+     * @param min      the minimum corner of the area, inclusive.
+     * @param max      the maximum corner of the area, inclusive.
+     * @param listener optional listener notified on changes, in addition to the blocks kept by the subscription.
+     * @return the subscription.
+     */
+    public Subscription subscribe(Entity owner, Category category, BlockPos min, BlockPos max,
+                                  @Nullable Listener listener) {
+        Subscription subscription = new Subscription(this, owner, category, min, max, listener);
+        this.subscriptions.add(subscription);
+        subscription.forEachSection(sectionKey -> {
+            Section section = this.sections.computeIfAbsent(sectionKey, key -> new Section());
+            section.subscribers++;
+            if (section.scanned) {
+                for (BlockPos pos : section.getBlocks(category)) {
+                    subscription.add(pos);
+                }
+            } else if (!section.pending && this.isLoaded(sectionKey)) {
+                section.pending = true;
+                this.pendingScans.add(sectionKey);
+            }
+        });
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (this.subscriptions.remove(subscription))
+            this.releaseSections(subscription);
+    }
+
+    /**
+     * @return true if all tracked sections in loaded chunks have been scanned.
+     */
+    public boolean isReady() {
+        return this.pendingScans.isEmpty();
+    }
+
+    /**
+     * Processes changed blocks and continues pending scans. Called at the end of each world tick.
+     */
+    public void tick() {
+        //subscriptions end with their owner, also if it is unloaded with its chunk: that does not mark it removed.
+        this.subscriptions.removeIf(subscription -> {
+            if (subscription.owner.isAlive() && subscription.owner.isAddedToWorld() &&
+                subscription.owner.level == this.world)
+                return false;
+            this.releaseSections(subscription);
+            return true;
+        });
+
+        if (!this.changedPositions.isEmpty()) {
+            for (BlockPos pos : this.changedPositions) {
+                this.updateBlock(pos);
+            }
+            this.changedPositions.clear();
+        }
+
+        int budget = SCAN_BLOCKS_PER_TICK;
+        while (budget > 0 && !this.pendingScans.isEmpty()) {
+            long sectionKey = this.pendingScans.poll();
+            Section section = this.sections.get(sectionKey);
+            if (section == null || !section.pending)
+                continue;
+            budget -= this.scanSection(sectionKey, section);
+        }
+    }
+
+    /**
+     * Marks the given position as changed, it is classified again on the next tick.
+     *
+     * @param pos the changed position.
+     */
+    public void onBlockChanged(BlockPos pos) {
+        //stumps depend on the soil below them, so a change also affects the block above.
+        if (this.isScanned(SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4)))
+            this.changedPositions.add(pos.immutable());
+        BlockPos above = pos.above();
+        if (this.isScanned(SectionPos.asLong(above.getX() >> 4, above.getY() >> 4, above.getZ() >> 4)))
+            this.changedPositions.add(above);
+    }
+
+    /**
+     * Queues the tracked sections of the given chunk for scanning.
+     *
+     * @param chunkPos the loaded chunk.
+     */
+    public void onChunkLoad(ChunkPos chunkPos) {
+        for (int y = 0; y < 16; y++) {
+            long sectionKey = SectionPos.asLong(chunkPos.x, y, chunkPos.z);
+            Section section = this.sections.get(sectionKey);
+            if (section != null && !section.scanned && !section.pending) {
+                section.pending = true;
+                this.pendingScans.add(sectionKey);
+            }
+        }
+    }
+
+    /**
+     * Drops the blocks of the tracked sections of the given chunk, they are scanned again once it is loaded.
+     *
+     * @param chunkPos the unloaded chunk.
+     */
+    public void onChunkUnload(ChunkPos chunkPos) {
+        for (int y = 0; y < 16; y++) {
+            Section section = this.sections.get(SectionPos.asLong(chunkPos.x, y, chunkPos.z));
+            if (section == null)
+                continue;
+            for (Category category : Category.values()) {
+                for (BlockPos pos : section.getBlocks(category)) {
+                    this.notifyRemoved(category, pos);
+                }
+            }
+            section.blocks.clear();
+            section.scanned = false;
+            section.pending = false;
+        }
+    }
+
+    /**
+     * Stops tracking the sections of the given subscription that no other subscription needs.
+     */
+    protected void releaseSections(Subscription subscription) {
+        subscription.forEachSection(sectionKey -> {
+            Section section = this.sections.get(sectionKey);
+            if (section != null && --section.subscribers <= 0)
+                this.sections.remove(sectionKey);
+        });
+    }
+
+    protected boolean isScanned(long sectionKey) {
+        Section section = this.sections.get(sectionKey);
+        return section != null && section.scanned;
+    }
+
+    protected boolean isLoaded(long sectionKey) {
+        return this.world.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey)) != null;
+    }
+
+    /**
+     * Scans the given section, unless its chunk is no longer loaded.
+     *
+     * @return the approximate amount of blocks checked.
+     */
+    protected int scanSection(long sectionKey, Section section) {
+        section.pending = false;
+        //do not load chunks just to index them, they are scanned once they are loaded.
+        Chunk chunk = this.world.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey));
+        if (chunk == null)
+            return SKIPPED_SECTION_COST;
+        section.scanned = true;
+
+        int sectionY = SectionPos.y(sectionKey);
+        int cost = SKIPPED_SECTION_COST;
+        ChunkSection chunkSection = sectionY >= 0 && sectionY < chunk.getSections().length ?
+                chunk.getSections()[sectionY] : null;
+        if (!ChunkSection.isEmpty(chunkSection)) {
+            //skip sections whose palette contains neither logs nor saplings without looking at their blocks
+            for (Category category : Category.values()) {
+                if (category.blockPredicate == null || !chunkSection.maybeHas(category.blockPredicate))
+                    continue;
+                BlockPos.Mutable pos = new BlockPos.Mutable();
+                int minX = SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey));
+                int minY = SectionPos.sectionToBlockCoord(sectionY);
+                int minZ = SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey));
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int y = 0; y < 16; y++) {
+                            if (category.blockPredicate.test(chunkSection.getBlockState(x, y, z)) &&
+                                    category.matches(chunk, pos.set(minX + x, minY + y, minZ + z)))
+                                this.add(category, section, pos.immutable());
+                        }
+                    }
+                }
+                cost += 16 * 16 * 16;
+            }
+        }
+
+        //containers are tile entities, so we only look at the tile entities of the chunk.
+        for (Map.Entry<BlockPos, TileEntity> entry : chunk.getBlockEntities().entrySet()) {
+            if (entry.getKey().getY() >> 4 == sectionY && Category.CONTAINER.matches(chunk, entry.getKey()))
+                this.add(Category.CONTAINER, section, entry.getKey().immutable());
+        }
+        return cost;
+    }
+
+    protected void updateBlock(BlockPos pos) {
+        Section section = this.sections.get(SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4));
+        if (section == null || !section.scanned)
+            return;
+        Chunk chunk = this.world.getChunkSource().getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk == null)
+            return;
+        for (Category category : Category.values()) {
+            boolean matches = category.matches(chunk, pos);
+            boolean indexed = section.getBlocks(category).contains(pos);
+            if (matches && !indexed)
+                this.add(category, section, pos);
+            else if (!matches && indexed) {
+                section.getBlocks(category).remove(pos);
+                this.notifyRemoved(category, pos);
+            }
+        }
+    }
+
+    protected void add(Category category, Section section, BlockPos pos) {
+        if (section.blocks.computeIfAbsent(category, key -> new HashSet<>()).add(pos)) {
+            for (Subscription subscription : this.subscriptions) {
+                if (subscription.category == category && subscription.contains(pos))
+                    subscription.add(pos);
+            }
+        }
+    }
+
+    protected void notifyRemoved(Category category, BlockPos pos) {
+        for (Subscription subscription : this.subscriptions) {
+            if (subscription.category == category && subscription.contains(pos))
+                subscription.remove(pos);
+        }
+    }
+    //endregion Methods
+
+    public enum Category {
+        /**
+         * Logs placed on tree soil.
+         */
+        TREE_STUMP(state -> BlockTags.LOGS.contains(state.getBlock())),
+        SAPLING(state -> BlockTags.SAPLINGS.contains(state.getBlock())),
+        /**
+         * Tile entities with an item handler.
+         */
+        CONTAINER(null);
+
+        //region Fields
+        /**
+         * Checks the block state alone, null if the category depends on tile entities only.
+         */
+        @Nullable
+        private final Predicate<BlockState> blockPredicate;
+        //endregion Fields
+
+        //region Initialization
+        Category(@Nullable Predicate<BlockState> blockPredicate) {
+            this.blockPredicate = blockPredicate;
+        }
+        //endregion Initialization
+
+        //region Methods
+        public boolean matches(Chunk chunk, BlockPos pos) {
+            switch (this) {
+                case TREE_STUMP:
+                    return this.blockPredicate.test(chunk.getBlockState(pos)) &&
+                            OccultismTags.TREE_SOIL.contains(chunk.getBlockState(pos.below()).getBlock());
+                case CONTAINER:
+                    TileEntity tileEntity = chunk.getBlockEntity(pos);
+                    return tileEntity != null && !tileEntity.isRemoved() &&
+                            tileEntity.getCapability(CapabilityItemHandler.ITEM_HANDLER_CAPABILITY).isPresent();
+                default:
+                    return this.blockPredicate.test(chunk.getBlockState(pos));
+            }
+        }
+        //endregion Methods
+    }
+
+    /**
+     * Notified about blocks entering or leaving a subscription.
+     */
+    public interface Listener {
+        //region Methods
+        void onBlockAdded(BlockPos pos);
+
+        void onBlockRemoved(BlockPos pos);
+        //endregion Methods
+    }
+
+    public static class Subscription {
+        //region Fields
+        protected final WorkAreaBlockIndex index;
+        protected final Entity owner;
+        protected final Category category;
+        protected final BlockPos min;
+        protected final BlockPos max;
+        @Nullable
+        protected final Listener listener;
+        protected final Set<BlockPos> blocks = new HashSet<>();
+        //endregion Fields
+
+        //region Initialization
+        protected Subscription(WorkAreaBlockIndex index, Entity owner, Category category, BlockPos min, BlockPos max,
+                               @Nullable Listener listener) {
+            this.index = index;
+            this.owner = owner;
+            this.category = category;
+            this.min = min.immutable();
+            this.max = max.immutable();
+            this.listener = listener;
+        }
+        //endregion Initialization
+
+        //region Getter / Setter
+
+        /**
+         * @return the matching blocks in the area known so far. Do not modify!
+         */
+        public Set<BlockPos> getBlocks() {
+            return Collections.unmodifiableSet(this.blocks);
+        }
+
+        /**
+         * @return true if the index has no pending scans, so the blocks of this subscription are complete.
+         */
+        public boolean isReady() {
+            return this.index.isReady();
+        }
+        //endregion Getter / Setter
+
+        //region Methods
+
+        /**
+         * @return true if this subscription follows the given area in the given world and is still active.
+         */
+        public boolean covers(World world, BlockPos min, BlockPos max) {
+            return this.index.world == world && this.min.equals(min) && this.max.equals(max) &&
+                    this.index.subscriptions.contains(this);
+        }
+
+        public void cancel() {
+            this.index.unsubscribe(this);
+        }
+
+        protected boolean contains(BlockPos pos) {
+            return pos.getX() >= this.min.getX() && pos.getX() <= this.max.getX() &&
+                    pos.getY() >= this.min.getY() && pos.getY() <= this.max.getY() &&
+                    pos.getZ() >= this.min.getZ() && pos.getZ() <= this.max.getZ();
+        }
+
+        protected void add(BlockPos pos) {
+            if (this.contains(pos) && this.blocks.add(pos) && this.listener != null)
+                this.listener.onBlockAdded(pos);
+        }
+
+        protected void remove(BlockPos pos) {
+            if (this.blocks.remove(pos) && this.listener != null)
+                this.listener.onBlockRemoved(pos);
+        }
+
+        protected void forEachSection(LongConsumer action) {
+            int minY = Math.max(0, this.min.getY() >> 4);
+            int maxY = Math.min(15, this.max.getY() >> 4);
+            for (int x = this.min.getX() >> 4; x <= this.max.getX() >> 4; x++) {
+                for (int z = this.min.getZ() >> 4; z <= this.max.getZ() >> 4; z++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        action.accept(SectionPos.asLong(x, y, z));
+                    }
+                }
+            }
+        }
+        //endregion Methods
+    }
+
+    protected static class Section {
+        //region Fields
+        protected final Map<Category, Set<BlockPos>> blocks = new EnumMap<>(Category.class);
+        protected int subscribers;
+        protected boolean scanned;
+        protected boolean pending;
+        //endregion Fields
+
+        //region Getter / Setter
+        protected Set<BlockPos> getBlocks(Category category) {
+            return this.blocks.getOrDefault(category, Collections.emptySet());
+        }
+        //endregion Getter / Setter
+    }
+}
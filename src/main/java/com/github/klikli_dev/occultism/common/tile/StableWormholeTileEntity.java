@@ -41,16 +41,21 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.World;
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.items.CapabilityItemHandler;
+import net.minecraftforge.items.IItemHandler;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public class StableWormholeTileEntity extends NetworkedTileEntity implements IStorageControllerProxy, INamedContainerProvider, IStorageAccessor {
 
@@ -60,6 +65,21 @@ public class StableWormholeTileEntity extends NetworkedTileEntity implements ISt
     protected ItemStack orderStack = ItemStack.EMPTY;
     protected SortDirection sortDirection = SortDirection.DOWN;
     protected SortType sortType = SortType.AMOUNT;
+
+    /**
+     * The last resolved linked storage controller, kept until the controller invalidates its capabilities (removal or
+     * chunk unload) or the link changes.
+     */
+    protected IStorageController cachedStorageController;
+    /**
+     * The item handler optional of the cached storage controller the forwarding optional was built from.
+     */
+    protected LazyOptional<IItemHandler> cachedControllerItemHandler;
+    /**
+     * The item handler optional handed out by this wormhole. Stays the same instance as long as the linked controller
+     * is valid, so pipes may keep it and get notified once it is invalidated.
+     */
+    protected LazyOptional<IItemHandler> itemHandler;
     //endregion Fields
 
     //region Initialization
@@ -113,12 +133,19 @@ public class StableWormholeTileEntity extends NetworkedTileEntity implements ISt
 
     @Override
     public IStorageController getLinkedStorageController() {
+        if (this.cachedStorageController != null) {
+            if (this.isCachedStorageControllerValid())
+                return this.cachedStorageController;
+            this.invalidateLinkedStorageController();
+        }
+
         if (this.linkedStorageControllerPosition != null) {
             TileEntity tileEntity = TileEntityUtil.get(this.level,
                     this.linkedStorageControllerPosition);
-            if (tileEntity instanceof IStorageController)
-                return (IStorageController) tileEntity;
-            else if (!this.level.isClientSide) {
+            if (tileEntity instanceof IStorageController) {
+                this.cachedStorageController = (IStorageController) tileEntity;
+                return this.cachedStorageController;
+            } else if (!this.level.isClientSide) {
                 //only reset the storage controller position if we are on logical server -> that means the position is not accessible.
                 //if we are on logical client it simply means we are out of render range, so we do not reset the pos
                 //resetting it would cause issues with e.g. stable wormhole
@@ -136,12 +163,21 @@ public class StableWormholeTileEntity extends NetworkedTileEntity implements ISt
 
     @Override
     public void setLinkedStorageControllerPosition(GlobalBlockPos blockPos) {
+        if (!Objects.equals(this.linkedStorageControllerPosition, blockPos))
+            this.invalidateLinkedStorageController();
         this.linkedStorageControllerPosition = blockPos;
     }
 
     @Nonnull
     @Override
     public <T> LazyOptional<T> getCapability(@Nonnull Capability<T> cap, Direction side) {
+        if (cap == CapabilityItemHandler.ITEM_HANDLER_CAPABILITY) {
+            LazyOptional<IItemHandler> itemHandler = this.getItemHandler();
+            if (itemHandler != null)
+                return itemHandler.cast();
+            return super.getCapability(cap, side);
+        }
+
         IStorageController controller = this.getLinkedStorageController();
         if (controller != null) {
             return ((TileEntity) controller).getCapability(cap, side);
@@ -149,12 +185,17 @@ public class StableWormholeTileEntity extends NetworkedTileEntity implements ISt
         return super.getCapability(cap, side);
     }
 
+    @Override
+    protected void invalidateCaps() {
+        super.invalidateCaps();
+        this.invalidateLinkedStorageController();
+    }
 
     @Override
     public void readNetwork(CompoundNBT compound) {
         if (compound.contains("linkedStorageControllerPosition"))
-            this.linkedStorageControllerPosition = GlobalBlockPos.from(compound.getCompound(
-                    "linkedStorageControllerPosition"));
+            this.setLinkedStorageControllerPosition(GlobalBlockPos.from(compound.getCompound(
+                    "linkedStorageControllerPosition")));
 
         this.setSortDirection(SortDirection.get(compound.getInt("sortDirection")));
         this.setSortType(SortType.get(compound.getInt("sortType")));
@@ -209,5 +250,65 @@ public class StableWormholeTileEntity extends NetworkedTileEntity implements ISt
     //endregion Overrides
 
     //region Methods
+
+    /**
+     * Gets the stable item handler optional forwarding to the linked storage controller.
+     * The optional is created once per resolved controller and invalidated together with the controller's own
+     * item handler optional.
+     *
+     * @return the item handler optional, or null if no storage controller is linked or loaded.
+     */
+    protected LazyOptional<IItemHandler> getItemHandler() {
+        if (this.itemHandler != null && this.cachedStorageController != null &&
+                this.isCachedStorageControllerValid())
+            return this.itemHandler;
+
+        IStorageController controller = this.getLinkedStorageController();
+        if (controller == null)
+            return null;
+
+        LazyOptional<IItemHandler> controllerItemHandler = ((TileEntity) controller).getCapability(
+                CapabilityItemHandler.ITEM_HANDLER_CAPABILITY, null);
+        if (!controllerItemHandler.isPresent())
+            return null;
+
+        IItemHandler handler = controllerItemHandler.orElseThrow(IllegalStateException::new);
+        this.cachedControllerItemHandler = controllerItemHandler;
+        this.itemHandler = LazyOptional.of(() -> handler);
+        controllerItemHandler.addListener(invalidated -> {
+            //only react to the optional we are currently forwarding, listeners of stale optionals may still fire.
+            if (invalidated == this.cachedControllerItemHandler)
+                this.invalidateLinkedStorageController();
+        });
+        return this.itemHandler;
+    }
+
+    /**
+     * Checks if the cached storage controller is still the live tile entity at its position.
+     * A tile entity in an unloaded chunk is detached from the world, changes to it would never be saved.
+     *
+     * @return true if the cached storage controller may be used.
+     */
+    protected boolean isCachedStorageControllerValid() {
+        TileEntity tileEntity = (TileEntity) this.cachedStorageController;
+        World world = tileEntity.getLevel();
+        BlockPos pos = tileEntity.getBlockPos();
+        return !tileEntity.isRemoved() && world != null && world.isLoaded(pos) &&
+               world.getBlockEntity(pos) == tileEntity;
+    }
+
+    /**
+     * Drops the cached storage controller and invalidates the forwarded item handler optional, so that listeners
+     * (e.g. pipes) re-query the capability.
+     */
+    protected void invalidateLinkedStorageController() {
+        this.cachedStorageController = null;
+        this.cachedControllerItemHandler = null;
+        if (this.itemHandler != null) {
+            LazyOptional<IItemHandler> itemHandler = this.itemHandler;
+            this.itemHandler = null;
+            itemHandler.invalidate();
+        }
+    }
     //endregion Methods
 }
@@ -25,27 +25,40 @@ package com.github.klikli_dev.occultism.common.tile;
 
 import com.github.klikli_dev.occultism.Occultism;
 import com.github.klikli_dev.occultism.api.common.container.IItemStackComparator;
+import com.github.klikli_dev.occultism.api.common.container.IStorageControllerItemHandler;
 import com.github.klikli_dev.occultism.api.common.data.GlobalBlockPos;
 import com.github.klikli_dev.occultism.api.common.data.MachineReference;
 import com.github.klikli_dev.occultism.api.common.data.SortDirection;
 import com.github.klikli_dev.occultism.api.common.data.SortType;
+import com.github.klikli_dev.occultism.api.common.data.StorageSnapshot;
+import com.github.klikli_dev.occultism.api.common.data.StorageView;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageAccessor;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import com.github.klikli_dev.occultism.api.common.tile.IStorageControllerBulkAccess;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageControllerProxy;
 import com.github.klikli_dev.occultism.common.block.storage.StorageStabilizerBlock;
 import com.github.klikli_dev.occultism.common.container.storage.StorageControllerContainer;
 import com.github.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
 import com.github.klikli_dev.occultism.common.job.ManageMachineJob;
 import com.github.klikli_dev.occultism.common.misc.DepositOrder;
+import com.github.klikli_dev.occultism.common.misc.FederatedStorageItemHandler;
 import com.github.klikli_dev.occultism.common.misc.ItemStackComparator;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.github.klikli_dev.occultism.common.misc.StackPalette;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerBulkItemHandler;
 import com.github.klikli_dev.occultism.common.misc.StorageControllerItemStackHandler;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetricsRegistry;
 import com.github.klikli_dev.occultism.exceptions.ItemHandlerMissingException;
 import com.github.klikli_dev.occultism.network.MessageUpdateStacks;
 import com.github.klikli_dev.occultism.registry.OccultismBlocks;
+import com.github.klikli_dev.occultism.registry.OccultismCapabilities;
 import com.github.klikli_dev.occultism.registry.OccultismItems;
 import com.github.klikli_dev.occultism.registry.OccultismTiles;
 import com.github.klikli_dev.occultism.util.EntityUtil;
 import com.github.klikli_dev.occultism.util.Math3DUtil;
+import com.github.klikli_dev.occultism.util.StorageUtil;
+import com.github.klikli_dev.occultism.util.TextUtil;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.DirectionalBlock;
@@ -58,17 +71,17 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
 import net.minecraft.tileentity.ITickableTileEntity;
+import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.World;
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.common.util.LazyOptional;
 import net.minecraftforge.fml.RegistryObject;
 import net.minecraftforge.items.CapabilityItemHandler;
-import net.minecraftforge.items.ItemHandlerHelper;
-import net.minecraftforge.items.ItemStackHandler;
 import software.bernie.geckolib3.core.IAnimatable;
 import software.bernie.geckolib3.core.PlayState;
 import software.bernie.geckolib3.core.builder.AnimationBuilder;
@@ -88,6 +101,10 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
 
     //region Fields
     public static final int MAX_STABILIZER_DISTANCE = 5;
+    /**
+     * The amount of changed items remembered for delta updates. Viewers that are further behind get a full snapshot.
+     */
+    public static final int MAX_CHANGE_LOG_SIZE = 4096;
 
     protected static final List<RegistryObject<? extends Block>> BLOCK_BLACKLIST = Stream.of(
             OccultismBlocks.STORAGE_CONTROLLER).collect(Collectors.toList());
@@ -97,18 +114,57 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
     public Map<GlobalBlockPos, UUID> depositOrderSpirits = new HashMap<>();
     protected SortDirection sortDirection = SortDirection.DOWN;
     protected SortType sortType = SortType.AMOUNT;
-    protected ItemStackHandler itemStackHandlerInternal = new StorageControllerItemStackHandler(this,
-            Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get(),
-            Occultism.SERVER_CONFIG.storage.controllerStackSize.get(),
-            Occultism.SERVER_CONFIG.storage.overrideItemStackSizes.get()
-    );
-    protected LazyOptional<ItemStackHandler> itemStackHandler = LazyOptional.of(() -> this.itemStackHandlerInternal);
+    protected IStorageControllerItemHandler itemStackHandlerInternal = Occultism.SERVER_CONFIG.storage.controllerBulkStorage.get() ?
+            new StorageControllerBulkItemHandler(this, Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get()) :
+            new StorageControllerItemStackHandler(this,
+                    Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get(),
+                    Occultism.SERVER_CONFIG.storage.controllerStackSize.get(),
+                    Occultism.SERVER_CONFIG.storage.overrideItemStackSizes.get()
+            );
+    /**
+     * Merges the own storage with the storage of federation members, just the own storage if there are none.
+     */
+    protected FederatedStorageItemHandler federatedItemHandler = new FederatedStorageItemHandler(this, this.itemStackHandlerInternal);
+    protected LazyOptional<IStorageControllerItemHandler> itemStackHandler = LazyOptional.of(() -> this.federatedItemHandler);
+    protected LazyOptional<IStorageControllerBulkAccess> bulkAccess = LazyOptional.of(() -> this);
     protected int maxSlots = Occultism.SERVER_CONFIG.storage.controllerBaseSlots.get();
-    protected int usedSlots = 0;
     protected boolean stabilizersInitialized = false;
     protected GlobalBlockPos globalPos;
+    /**
+     * Other storage controllers whose storage is merged into this one, see {@link FederatedStorageItemHandler}.
+     */
+    protected List<GlobalBlockPos> federationMembers = new ArrayList<>();
+    /**
+     * The controller this one is a federation member of, if any.
+     */
+    protected GlobalBlockPos federationHub;
 
     protected MessageUpdateStacks cachedMessageUpdateStacks;
+    /**
+     * Palette of all keys sent to clients since the last compaction, shared by all viewers.
+     */
+    protected StackPalette stackPalette = new StackPalette(0);
+    /**
+     * Contents at the last requested stacks version, rebuilt lazily once the version changes.
+     */
+    protected volatile StorageSnapshot snapshot;
+    protected StorageControllerMetrics metrics = new StorageControllerMetrics();
+
+    /**
+     * Incremented for each changed item, used by viewers to request only what changed since their version.
+     */
+    protected long stacksVersion = 0;
+    /**
+     * The oldest version deltas can be created for, older viewers need a full snapshot.
+     */
+    protected long minDeltaVersion = 0;
+    protected TreeMap<Long, ItemStackKey> changeLog = new TreeMap<>();
+    protected Map<ItemStackKey, Long> changeLogVersions = new HashMap<>();
+    /**
+     * The stored keys sorted per sort type, in the order of SortDirection.UP. Rebuilt on demand after stacks changed.
+     */
+    protected Map<SortType, List<ItemStackKey>> sortedKeys = new EnumMap<>(SortType.class);
+    protected long sortedKeysVersion = -1;
 
     private AnimationFactory factory = new AnimationFactory(this);
 
@@ -180,47 +236,175 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
 
     @Override
     public List<ItemStack> getStacks() {
-        ItemStackHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
-        int size = handler.getSlots();
-        int usedSlots = 0;
-        List<ItemStack> result = new ArrayList<>(size);
-        for (int slot = 0; slot < size; slot++) {
-            ItemStack stack = handler.getStackInSlot(slot);
-            if (!stack.isEmpty()) {
-                usedSlots++;
-                this.mergeIntoList(result, stack.copy());
-            }
+        return this.getSnapshot().getStacks();
+    }
+
+    @Override
+    public StorageSnapshot getSnapshot() {
+        this.updateChangeLog();
+        StorageSnapshot snapshot = this.snapshot;
+        if (snapshot == null || snapshot.getVersion() != this.stacksVersion) {
+            IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+            snapshot = new StorageSnapshot(this.stacksVersion, handler.getTotals());
+            this.snapshot = snapshot;
+            this.metrics.recordSnapshotRebuild(snapshot.getTotals().size());
         }
-        this.usedSlots = usedSlots;
-        return result;
+        return snapshot;
+    }
+
+    @Override
+    public StorageControllerMetrics getMetrics() {
+        return this.metrics;
     }
 
     @Override
     public MessageUpdateStacks getMessageUpdateStacks() {
+        this.updateChangeLog();
+        StackPalette.Update update = this.createPaletteUpdate(-1, 0);
         if (this.cachedMessageUpdateStacks == null) {
-            List<ItemStack> stacks = this.getStacks();
-            this.cachedMessageUpdateStacks = new MessageUpdateStacks(stacks, this.getUsedSlots(), this.getMaxSlots());
+            this.cachedMessageUpdateStacks = this.createMessageUpdateStacks(update);
         }
         return this.cachedMessageUpdateStacks;
     }
 
+    @Override
+    public MessageUpdateStacks getMessageUpdateStacks(long sinceVersion, int paletteEpoch, int paletteSize) {
+        this.updateChangeLog();
+        StackPalette.Update update = this.createPaletteUpdate(paletteEpoch, paletteSize);
+        if (sinceVersion < this.minDeltaVersion || sinceVersion > this.stacksVersion) {
+            //the cached snapshot contains the whole palette, only worth it if the receiver has no palette yet.
+            return update.getStart() == 0 ? this.getMessageUpdateStacks() : this.createMessageUpdateStacks(update);
+        }
+
+        NavigableMap<Long, ItemStackKey> changes = this.changeLog.tailMap(sinceVersion, false);
+        if (changes.isEmpty())
+            return null;
+
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        for (ItemStackKey key : changes.values()) {
+            long count = handler.getCount(key);
+            if (count > 0)
+                update.addStack(key, count);
+            else
+                update.addRemoved(key);
+        }
+        return new MessageUpdateStacks(update, this.getUsedSlots(), this.getMaxSlots(), sinceVersion,
+                this.stacksVersion);
+    }
+
+    @Override
+    public MessageUpdateStacks getMessageUpdateStackView(StorageView view, long sinceVersion, int paletteEpoch,
+                                                         int paletteSize) {
+        this.updateChangeLog();
+        if (sinceVersion == this.stacksVersion)
+            return null;
+
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        StackPalette.Update update = this.createPaletteUpdate(paletteEpoch, paletteSize);
+        List<ItemStackKey> keys = this.getSortedKeys(view.sortType);
+        String searchText = view.searchText.toLowerCase();
+        int total = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            ItemStackKey key = keys.get(view.sortDirection.isDown() ? keys.size() - 1 - i : i);
+            if (!StorageUtil.matchesSearch(key.getPrototype(), searchText))
+                continue;
+            if (total >= view.start && update.getStackCount() < view.count)
+                update.addStack(key, handler.getCount(key));
+            total++;
+        }
+        return new MessageUpdateStacks(update, view.start, total, this.getUsedSlots(), this.getMaxSlots(),
+                this.stacksVersion);
+    }
+
     @Override
     public int getMaxSlots() {
+        return this.maxSlots + this.federatedItemHandler.getMemberMaxSlots();
+    }
+
+    /**
+     * @return the max slots of this controller, without federation members.
+     */
+    public int getOwnMaxSlots() {
         return this.maxSlots;
     }
 
+    /**
+     * @return the storage of this controller, without federation members.
+     */
+    public IStorageControllerItemHandler getOwnItemHandler() {
+        return this.itemStackHandlerInternal;
+    }
+
+    /**
+     * @return the current stacks version, including changes not yet moved into the change log.
+     */
+    public long getStacksVersion() {
+        this.updateChangeLog();
+        return this.stacksVersion;
+    }
+
+    /**
+     * @return the positions of the controllers federated into this one. Do not modify!
+     */
+    public List<GlobalBlockPos> getFederationMembers() {
+        return Collections.unmodifiableList(this.federationMembers);
+    }
+
+    /**
+     * Gets the controller this one is a federation member of. A hub that is loaded but no longer lists this
+     * controller, e.g. because it was broken, is dropped.
+     *
+     * @return the position of the hub or null.
+     */
+    public GlobalBlockPos getFederationHub() {
+        if (this.federationHub != null && this.level != null && !this.level.isClientSide) {
+            World world = this.level.dimension() == this.federationHub.getDimensionKey() ? this.level :
+                    this.level.getServer().getLevel(this.federationHub.getDimensionKey());
+            //hubs in unloaded chunks are kept, we cannot tell if they still list us
+            if (world == null || world.hasChunkAt(this.federationHub.getPos())) {
+                StorageControllerTileEntity hub = this.getLoadedFederationHub();
+                if (hub == null || !hub.federationMembers.contains(this.getLinkedStorageControllerPosition()))
+                    this.setFederationHub(null);
+            }
+        }
+        return this.federationHub;
+    }
+
+    /**
+     * Gets the hub this controller is a federation member of, if it is loaded.
+     *
+     * @return the hub or null.
+     */
+    @Nullable
+    protected StorageControllerTileEntity getLoadedFederationHub() {
+        if (this.federationHub == null || this.level == null || this.level.isClientSide)
+            return null;
+        World world = this.level.dimension() == this.federationHub.getDimensionKey() ? this.level :
+                this.level.getServer().getLevel(this.federationHub.getDimensionKey());
+        if (world == null || !world.hasChunkAt(this.federationHub.getPos()))
+            return null;
+        TileEntity tileEntity = world.getBlockEntity(this.federationHub.getPos());
+        return tileEntity instanceof StorageControllerTileEntity ? (StorageControllerTileEntity) tileEntity : null;
+    }
+
+    public void setFederationHub(GlobalBlockPos federationHub) {
+        this.federationHub = federationHub;
+        this.setChanged();
+    }
+
     @Override
     public void setMaxSlots(int slots) {
         this.maxSlots = slots;
         this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new).setSize(this.maxSlots);
         //force resync
         this.cachedMessageUpdateStacks = null;
+        this.resetChangeLog();
         this.markNetworkDirty();
     }
 
     @Override
     public int getUsedSlots() {
-        return this.usedSlots;
+        return this.itemStackHandler.map(IStorageControllerItemHandler::getUsedSlots).orElse(0);
     }
 
     @Override
@@ -289,12 +473,8 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
         if (this.isBlacklisted(stack))
             return stack.getCount();
 
-        ItemStackHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
-        if (ItemHandlerHelper.insertItem(handler, stack, true).getCount() < stack.getCount()) {
-            stack = ItemHandlerHelper.insertItem(handler, stack, simulate);
-        }
-
-        return stack.getCount();
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        return handler.insertItemIndexed(stack, simulate).getCount();
     }
 
     @Override
@@ -302,68 +482,77 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
         if (requestedSize <= 0 || comparator == null) {
             return ItemStack.EMPTY;
         }
-        ItemStackHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
-        ItemStack firstMatchedStack = ItemStack.EMPTY;
-        int remaining = requestedSize;
-        for (int slot = 0; slot < handler.getSlots(); slot++) {
-
-            //first we force a simulation
-            ItemStack stack = handler.extractItem(slot, remaining, true);
-            if (stack.isEmpty()) {
-                continue;
-            }
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
 
-            //if we have not found anything yet we can just store the result or move on
-            if (firstMatchedStack.isEmpty()) {
-
-                if (!comparator.test(stack)) {
-                    //this slot does not match so we move on
-                    continue;
-                }
-                //just take entire stack -> we're in sim mode
-                firstMatchedStack = stack.copy();
-            } else {
-                //we already found something, so we need to make sure the stacks match up, if not we move on.
-                if (!ItemHandlerHelper.canItemStacksStack(firstMatchedStack, stack)) {
-                    continue;
-                }
-            }
+        //the first stored item that matches decides what we extract, only slots holding that item are touched.
+        ItemStackKey key = handler.findKey(comparator);
+        if (key == null) {
+            return ItemStack.EMPTY;
+        }
 
-            //get how many we have to extract in this round, cannot be more than we need nor more than is in this slot.
-            int toExtract = Math.min(stack.getCount(), remaining);
+        int extractCount = handler.extractItemIndexed(key, requestedSize, simulate);
+        return extractCount > 0 ? key.createStack(extractCount) : ItemStack.EMPTY;
+    }
 
-            //now we can leave simulation up to the caller
-            ItemStack extractedStack = handler.extractItem(slot, toExtract, simulate);
-            remaining -= extractedStack.getCount();
+    @Nonnull
+    @Override
+    public List<ItemStack> insertStacks(@Nonnull List<ItemStack> stacks, boolean simulate) {
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        List<ItemStack> remainders = new ArrayList<>(stacks.size());
+        for (ItemStack stack : stacks) {
+            if (stack.isEmpty() || this.isBlacklisted(stack))
+                remainders.add(stack.copy());
+            else
+                remainders.add(handler.insertItemIndexed(stack, simulate));
+        }
+        return remainders;
+    }
 
-            //if we got all we need we can exit here.
-            if (remaining <= 0) {
+    @Override
+    public long extractItems(@Nonnull ItemStackKey key, long amount, boolean simulate) {
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        long available = handler.getCount(key);
+        long toExtract = Math.min(amount, available);
+        long extracted = 0;
+        //the handler works with int amounts, so extract in chunks for very large requests.
+        while (extracted < toExtract) {
+            int chunk = (int) Math.min(toExtract - extracted, Integer.MAX_VALUE);
+            int result = handler.extractItemIndexed(key, chunk, simulate);
+            if (result <= 0)
                 break;
-            }
+            extracted += result;
         }
+        return extracted;
+    }
 
-        //set the exact output count and return.
-        int extractCount = requestedSize - remaining;
-        if (!firstMatchedStack.isEmpty() && extractCount > 0) {
-            firstMatchedStack.setCount(extractCount);
+    @Nonnull
+    @Override
+    public Map<ItemStackKey, Long> getCounts(@Nonnull Collection<ItemStackKey> keys) {
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        Map<ItemStackKey, Long> counts = new HashMap<>(keys.size());
+        for (ItemStackKey key : keys) {
+            counts.put(key, handler.getCount(key));
         }
+        return counts;
+    }
 
-        return firstMatchedStack;
+    @Nonnull
+    @Override
+    public Map<ItemStackKey, Long> getTotals() {
+        return this.getSnapshot().getTotals();
     }
 
     public int getAvailableAmount(IItemStackComparator comparator) {
         if (comparator == null) {
             return 0;
         }
-        int totalCount = 0;
-        ItemStackHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
-        int size = handler.getSlots();
-        for (int slot = 0; slot < size; slot++) {
-            ItemStack stack = handler.getStackInSlot(slot);
-            if (comparator.matches(stack))
-                totalCount += stack.getCount();
+        long totalCount = 0;
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        for (ItemStackKey key : handler.getCandidateKeys(comparator)) {
+            if (comparator.matches(key.getPrototype()))
+                totalCount += handler.getCount(key);
         }
-        return totalCount;
+        return (int) Math.min(totalCount, Integer.MAX_VALUE);
     }
 
     @Override
@@ -372,10 +561,34 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
         this.setChanged();
     }
 
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        if (!this.level.isClientSide)
+            StorageControllerMetricsRegistry.register(this);
+    }
+
+    @Override
+    public void onChunkUnloaded() {
+        super.onChunkUnloaded();
+        //forge does not invalidate capabilities on chunk unload, but users caching them (e.g. wormholes) need to let go
+        this.invalidateCaps();
+        StorageControllerMetricsRegistry.unregister(this);
+        this.detachFromFederationHub();
+    }
+
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        StorageControllerMetricsRegistry.unregister(this);
+        this.detachFromFederationHub();
+    }
+
     @Override
     protected void invalidateCaps() {
         super.invalidateCaps();
         this.itemStackHandler.invalidate();
+        this.bulkAccess.invalidate();
     }
 
     @Nonnull
@@ -384,6 +597,9 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
         if (cap == CapabilityItemHandler.ITEM_HANDLER_CAPABILITY) {
             return this.itemStackHandler.cast();
         }
+        if (cap == OccultismCapabilities.STORAGE_CONTROLLER_BULK_ACCESS) {
+            return this.bulkAccess.cast();
+        }
         return super.getCapability(cap, direction);
     }
 
@@ -394,6 +610,7 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
                 this.stabilizersInitialized = true;
                 this.updateStabilizers();
             }
+            this.updateFederation();
         }
     }
 
@@ -402,20 +619,42 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
         compound.remove("linkedMachines"); //linked machines are not saved, they self-register.
         super.load(state, compound);
 
+        this.federationMembers = new ArrayList<>();
+        if (compound.contains("federationMembers")) {
+            ListNBT membersNbt = compound.getList("federationMembers", Constants.NBT.TAG_COMPOUND);
+            for (int i = 0; i < membersNbt.size(); i++) {
+                this.federationMembers.add(GlobalBlockPos.from(membersNbt.getCompound(i)));
+            }
+        }
+        this.federationHub = compound.contains("federationHub") ?
+                             GlobalBlockPos.from(compound.getCompound("federationHub")) : null;
+
         //read stored items
         if (compound.contains("items")) {
             this.itemStackHandler.ifPresent(handler -> handler.deserializeNBT(compound.getCompound("items")));
             this.cachedMessageUpdateStacks = null;
+            this.resetChangeLog();
         }
     }
 
     @Override
     public CompoundNBT save(CompoundNBT compound) {
+        long start = System.nanoTime();
         super.save(compound);
         compound.remove("linkedMachines"); //linked machines are not saved, they self-register.
         this.itemStackHandler.ifPresent(handler -> {
             compound.put("items", handler.serializeNBT());
         });
+        if (!this.federationMembers.isEmpty()) {
+            ListNBT membersNbt = new ListNBT();
+            for (GlobalBlockPos member : this.federationMembers) {
+                membersNbt.add(member.serializeNBT());
+            }
+            compound.put("federationMembers", membersNbt);
+        }
+        if (this.federationHub != null)
+            compound.put("federationHub", this.federationHub.serializeNBT());
+        this.metrics.recordSave(System.nanoTime() - start);
         return compound;
     }
 
@@ -537,20 +776,194 @@ public class StorageControllerTileEntity extends NetworkedTileEntity implements
     }
 
 
-    protected void mergeIntoList(List<ItemStack> list, ItemStack stackToAdd) {
-        boolean merged = false;
-        for (ItemStack stack : list) {
-            if (ItemHandlerHelper.canItemStacksStack(stackToAdd, stack)) {
-                stack.setCount(stack.getCount() + stackToAdd.getCount());
-                merged = true;
-                break;
-            }
+    /**
+     * Starts a palette encoded stack update for a receiver with the given palette, compacting the palette first if
+     * it holds too many keys that are no longer stored.
+     *
+     * @param paletteEpoch the palette epoch the receiver has.
+     * @param paletteSize  the palette size the receiver has.
+     * @return the update.
+     */
+    protected StackPalette.Update createPaletteUpdate(int paletteEpoch, int paletteSize) {
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        if (this.stackPalette.compact(handler.getTotals().size()))
+            this.cachedMessageUpdateStacks = null; //refers to the old palette
+        return this.stackPalette.createUpdate(paletteEpoch, paletteSize);
+    }
+
+    /**
+     * Creates a full snapshot of all stacks.
+     *
+     * @param update the palette update to add the stacks to.
+     * @return the message.
+     */
+    protected MessageUpdateStacks createMessageUpdateStacks(StackPalette.Update update) {
+        for (Map.Entry<ItemStackKey, Long> entry : this.getSnapshot().getTotals().entrySet()) {
+            update.addStack(entry.getKey(), entry.getValue());
+        }
+        return new MessageUpdateStacks(update, this.getUsedSlots(), this.getMaxSlots(), -1, this.stacksVersion);
+    }
+
+    /**
+     * Gets the items that changed since the given version, used by federation hubs to follow this controller.
+     *
+     * @param sinceVersion the version to get the changes since.
+     * @return the changed items, or null if the change log does not reach back to the given version.
+     */
+    public Collection<ItemStackKey> getChangedKeysSince(long sinceVersion) {
+        this.updateChangeLog();
+        if (sinceVersion < this.minDeltaVersion || sinceVersion > this.stacksVersion)
+            return null;
+        return new ArrayList<>(this.changeLog.tailMap(sinceVersion, false).values());
+    }
+
+    /**
+     * Adds the controller at the given position to the federation of this controller.
+     *
+     * @param member the position of the controller to add.
+     * @return false if the controller is already a member or is this controller.
+     */
+    public boolean addFederationMember(GlobalBlockPos member) {
+        if (member.equals(this.getLinkedStorageControllerPosition()) || this.federationMembers.contains(member))
+            return false;
+        this.federationMembers.add(member);
+        this.setChanged();
+        return true;
+    }
+
+    /**
+     * Removes the controller at the given position from the federation of this controller.
+     *
+     * @param member the position of the controller to remove.
+     * @return false if the controller was not a member.
+     */
+    public boolean removeFederationMember(GlobalBlockPos member) {
+        if (!this.federationMembers.remove(member))
+            return false;
+        this.setChanged();
+        this.resolveFederationMembers();
+        return true;
+    }
+
+    /**
+     * Follows the loaded federation members. Members are resolved once per second and checked for being unloaded in
+     * between, their changes are picked up every tick.
+     */
+    protected void updateFederation() {
+        if (this.federationMembers.isEmpty() && !this.federatedItemHandler.hasMembers())
+            return;
+        if (this.level.getGameTime() % 20 == 0)
+            this.resolveFederationMembers();
+        else
+            this.federatedItemHandler.validateMembers();
+        if (!this.federatedItemHandler.pollMembers()) {
+            this.cachedMessageUpdateStacks = null;
+            this.resetChangeLog();
+        }
+    }
+
+    /**
+     * Makes the loaded hub stop routing items to this controller right away, it is no longer saved or in the world.
+     */
+    protected void detachFromFederationHub() {
+        StorageControllerTileEntity hub = this.getLoadedFederationHub();
+        if (hub != null)
+            hub.federatedItemHandler.removeMember(this);
+    }
+
+    /**
+     * Looks up the loaded federation members, nearest first. Chunks are not loaded for this, members in unloaded
+     * chunks are left out until they are loaded again.
+     */
+    protected void resolveFederationMembers() {
+        List<StorageControllerTileEntity> members = new ArrayList<>(this.federationMembers.size());
+        for (GlobalBlockPos memberPos : this.federationMembers) {
+            World world = this.level.dimension() == memberPos.getDimensionKey() ? this.level :
+                    this.level.getServer().getLevel(memberPos.getDimensionKey());
+            if (world == null || !world.hasChunkAt(memberPos.getPos()))
+                continue;
+            TileEntity tileEntity = world.getBlockEntity(memberPos.getPos());
+            if (tileEntity instanceof StorageControllerTileEntity && tileEntity != this && !tileEntity.isRemoved())
+                members.add((StorageControllerTileEntity) tileEntity);
+        }
+        //members in other dimensions are sorted last
+        members.sort(Comparator.comparingDouble(member -> member.getLevel() == this.level ?
+                member.getBlockPos().distSqr(this.worldPosition) : Double.MAX_VALUE));
+        this.federatedItemHandler.setMembers(members);
+    }
+
+    /**
+     * Moves the items changed in the handler into the change log, assigning each a new version.
+     */
+    protected void updateChangeLog() {
+        Set<ItemStackKey> changedKeys = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new)
+                .pollChangedKeys();
+        if (!changedKeys.isEmpty())
+            this.cachedMessageUpdateStacks = null;
+        for (ItemStackKey key : changedKeys) {
+            long version = ++this.stacksVersion;
+            Long previousVersion = this.changeLogVersions.put(key, version);
+            if (previousVersion != null)
+                this.changeLog.remove(previousVersion);
+            this.changeLog.put(version, key);
         }
-        if (!merged) {
-            list.add(stackToAdd);
+
+        while (this.changeLog.size() > MAX_CHANGE_LOG_SIZE) {
+            Map.Entry<Long, ItemStackKey> oldest = this.changeLog.pollFirstEntry();
+            this.changeLogVersions.remove(oldest.getValue());
+            this.minDeltaVersion = oldest.getKey();
         }
     }
 
+    /**
+     * Gets the stored keys sorted by the given sort type, in the order of SortDirection.UP.
+     * The result is cached until the stacks change.
+     *
+     * @param sortType the sort type.
+     * @return the sorted keys. Do not modify!
+     */
+    protected List<ItemStackKey> getSortedKeys(SortType sortType) {
+        if (this.sortedKeysVersion != this.stacksVersion) {
+            this.sortedKeys.clear();
+            this.sortedKeysVersion = this.stacksVersion;
+        }
+        return this.sortedKeys.computeIfAbsent(sortType, this::sortKeys);
+    }
+
+    /**
+     * Sorts the stored keys the same way the storage controller gui sorts stacks.
+     *
+     * @param sortType the sort type.
+     * @return the sorted keys.
+     */
+    protected List<ItemStackKey> sortKeys(SortType sortType) {
+        IStorageControllerItemHandler handler = this.itemStackHandler.orElseThrow(ItemHandlerMissingException::new);
+        List<ItemStackKey> keys = new ArrayList<>(handler.getTotals().keySet());
+        if (sortType == SortType.AMOUNT) {
+            keys.sort(Comparator.<ItemStackKey>comparingLong(handler::getCount).reversed());
+        } else {
+            //compute names once instead of per comparison
+            Map<ItemStackKey, String> names = new HashMap<>();
+            for (ItemStackKey key : keys) {
+                String name = sortType == SortType.NAME ? key.getPrototype().getHoverName().getString() :
+                        TextUtil.getModNameForGameObject(key.getItem());
+                names.put(key, name == null ? "" : name);
+            }
+            keys.sort(Comparator.comparing(names::get, String.CASE_INSENSITIVE_ORDER));
+        }
+        return keys;
+    }
+
+    /**
+     * Forgets all changes, so all viewers will receive a full snapshot next.
+     */
+    protected void resetChangeLog() {
+        this.itemStackHandler.ifPresent(IStorageControllerItemHandler::pollChangedKeys);
+        this.changeLog.clear();
+        this.changeLogVersions.clear();
+        this.minDeltaVersion = ++this.stacksVersion;
+    }
+
     protected void validateLinkedMachines() {
         // remove all entries that lead to invalid tile entities.
         this.linkedMachines.entrySet().removeIf(entry -> entry.getValue().getTileEntity(this.level) == null);
@@ -69,6 +69,7 @@ public class OccultismClientConfig extends ConfigBase {
     public class MiscSettings extends ConfigCategoryBase {
         //region Fields
         public final CachedBoolean syncJeiSearch;
+        public final CachedBoolean serverSideStorageView;
         //endregion Fields
 
         //region Initialization
@@ -80,6 +81,12 @@ public class OccultismClientConfig extends ConfigBase {
                     builder.comment(
                                     "Sync JEI search in storage actuator.")
                             .define("syncJeiSearch", false));
+            this.serverSideStorageView = CachedBoolean.cache(this,
+                    builder.comment(
+                                    "Let the server search, sort and page the storage actuator contents, so only visible " +
+                                            "items are sent. Recommended for large storage networks on slow connections. " +
+                                            "Tooltip search (#) then only searches item names.")
+                            .define("serverSideStorageView", false));
             builder.pop();
         }
         //endregion Initialization
@@ -91,6 +91,11 @@ public class OccultismServerConfig extends ConfigBase {
         public final CachedInt blacksmithFamiliarUpgradeCost;
         public final CachedInt blacksmithFamiliarUpgradeCooldown;
         public final CachedFloat blacksmithFamiliarRepairChance;
+        public final CachedFloat aiTickBudgetMillis;
+        public final CachedInt aiNearDistance;
+        public final CachedInt aiFarDistance;
+        public final CachedInt aiMediumCadence;
+        public final CachedInt aiFarCadence;
         //endregion Fields
 
         //region Initialization
@@ -153,6 +158,30 @@ public class OccultismServerConfig extends ConfigBase {
                                     "The cooldown for a blacksmith familiar to upgrade another familiar.")
                             .define("blacksmithFamiliarUpgradeCooldown",  20 * 20));
 
+            this.aiTickBudgetMillis = CachedFloat.cache(this,
+                    builder.comment(
+                                    "The milliseconds per server tick all spirits together may spend looking for new work. Once " +
+                                            "spent, remaining spirits wait with looking for new work until the next tick. " +
+                                            "Running tasks, movement and job updates are not counted. 0 to disable.")
+                            .define("aiTickBudgetMillis", 10.0));
+            this.aiNearDistance = CachedInt.cache(this,
+                    builder.comment(
+                                    "Spirits within this distance to a player look for new work every tick.")
+                            .define("aiNearDistance", 32));
+            this.aiFarDistance = CachedInt.cache(this,
+                    builder.comment(
+                                    "Spirits within this distance to a player look for new work every aiMediumCadence ticks, " +
+                                            "spirits further away every aiFarCadence ticks.")
+                            .define("aiFarDistance", 96));
+            this.aiMediumCadence = CachedInt.cache(this,
+                    builder.comment(
+                                    "The ticks between two looks for new work for spirits between aiNearDistance and aiFarDistance to a player.")
+                            .define("aiMediumCadence", 5));
+            this.aiFarCadence = CachedInt.cache(this,
+                    builder.comment(
+                                    "The ticks between two looks for new work for spirits further than aiFarDistance from any player.")
+                            .define("aiFarCadence", 20));
+
 
             builder.pop();
         }
@@ -264,6 +293,9 @@ public class OccultismServerConfig extends ConfigBase {
         public final CachedInt controllerBaseSlots;
         public final CachedInt controllerStackSize;
         public final CachedBoolean overrideItemStackSizes;
+        public final CachedBoolean controllerBulkStorage;
+        public final CachedInt controllerUpdateInterval;
+        public final CachedBoolean exposeMetricsViaJmx;
         //endregion Fields
 
         //region Initialization
@@ -294,6 +326,23 @@ public class OccultismServerConfig extends ConfigBase {
                                             "item type (such as 16 for ender pearls, 64 for iron ingot). WARNING: Setting this to " +
                                             "false may have a negative impact on performance.")
                             .define("overrideItemStackSizes", true));
+            this.controllerBulkStorage = CachedBoolean.cache(this,
+                    builder.comment(
+                                    "True to store one entry with a total count per unique item in the storage actuator, " +
+                                            "instead of item stacks. In this mode slots provided by stabilizers and the actuator limit " +
+                                            "the amount of unique item types, and controllerStackSize is ignored. Existing contents " +
+                                            "are converted when the actuator is loaded.")
+                            .define("controllerBulkStorage", false));
+            this.controllerUpdateInterval = CachedInt.cache(this,
+                    builder.comment(
+                                    "The interval in ticks in which pending storage content updates are sent to players " +
+                                            "viewing a storage actuator. All changes within the interval are sent as one update.")
+                            .defineInRange("controllerUpdateInterval", 1, 1, 20));
+            this.exposeMetricsViaJmx = CachedBoolean.cache(this,
+                    builder.comment(
+                                    "If true, storage actuator metrics are exposed as JMX MBean while the server runs. " +
+                                            "The metrics are always available via /occultism storage stats.")
+                            .define("exposeMetricsViaJmx", false));
             builder.pop();
         }
         //endregion Initialization
@@ -25,6 +25,7 @@ package com.github.klikli_dev.occultism.handlers;
 import com.github.klikli_dev.occultism.Occultism;
 import com.github.klikli_dev.occultism.client.gui.storage.SatchelScreen;
 import com.github.klikli_dev.occultism.client.gui.storage.StorageRemoteGui;
+import com.github.klikli_dev.occultism.common.misc.CraftingRecipeCache;
 import com.github.klikli_dev.occultism.network.*;
 import com.github.klikli_dev.occultism.util.CuriosUtil;
 import com.github.klikli_dev.occultism.util.MovementUtil;
@@ -35,6 +36,7 @@ import net.minecraft.entity.EntityType;
 import net.minecraft.util.SoundEvents;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.InputEvent;
+import net.minecraftforge.client.event.RecipesUpdatedEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
@@ -61,6 +63,12 @@ public class ClientPlayerEventHandler {
         }
     }
 
+    @SubscribeEvent
+    public static void onRecipesUpdated(final RecipesUpdatedEvent event) {
+        //the server sent new recipes, so cached client side recipe lookups are outdated
+        CraftingRecipeCache.invalidateAll();
+    }
+
     @SubscribeEvent
     public static void onMouseInput(final InputEvent.MouseInputEvent event) {
         //handle mouse button bindings for storage keys
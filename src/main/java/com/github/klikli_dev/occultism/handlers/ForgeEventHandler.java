@@ -23,10 +23,34 @@
 package com.github.klikli_dev.occultism.handlers;
 
 import com.github.klikli_dev.occultism.Occultism;
+import com.github.klikli_dev.occultism.common.entity.spirit.SpiritEntity;
+import com.github.klikli_dev.occultism.common.misc.CraftingRecipeCache;
+import com.github.klikli_dev.occultism.common.misc.ItemEntityRegistry;
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetricsRegistry;
+import com.github.klikli_dev.occultism.common.misc.StorageUpdateDispatcher;
+import com.github.klikli_dev.occultism.common.misc.WorkAreaBlockIndex;
 import com.github.klikli_dev.occultism.registry.OccultismCommands;
+import net.minecraft.client.resources.ReloadListener;
+import net.minecraft.entity.item.ItemEntity;
+import net.minecraft.profiler.IProfiler;
+import net.minecraft.resources.IResourceManager;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraftforge.event.AddReloadListenerEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStartedEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppedEvent;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
 
 @Mod.EventBusSubscriber(modid = Occultism.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class ForgeEventHandler {
@@ -37,5 +61,126 @@ public class ForgeEventHandler {
     public static void registerCommands(RegisterCommandsEvent event) {
         OccultismCommands.register(event.getDispatcher());
     }
+
+    @SubscribeEvent
+    public static void addReloadListeners(AddReloadListenerEvent event) {
+        //cached recipe lookups are no longer valid after a datapack reload
+        event.addListener(new ReloadListener<Object>() {
+            @Override
+            protected Object prepare(IResourceManager resourceManager, IProfiler profiler) {
+                return null;
+            }
+
+            @Override
+            protected void apply(Object object, IResourceManager resourceManager, IProfiler profiler) {
+                CraftingRecipeCache.invalidateAll();
+            }
+        });
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            StorageUpdateDispatcher.onServerTickEnd(ServerLifecycleHooks.getCurrentServer());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && !event.world.isClientSide) {
+            WorkAreaBlockIndex index = WorkAreaBlockIndex.getIfPresent(event.world);
+            if (index != null)
+                index.tick();
+            ItemEntityRegistry registry = ItemEntityRegistry.getIfPresent(event.world);
+            if (registry != null)
+                registry.tick();
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onEntityJoinWorld(EntityJoinWorldEvent event) {
+        //lowest priority so items whose spawn is cancelled by other handlers are not registered
+        if (event.getEntity() instanceof ItemEntity && !event.getWorld().isClientSide)
+            ItemEntityRegistry.get(event.getWorld()).add((ItemEntity) event.getEntity());
+    }
+
+    @SubscribeEvent
+    public static void onEntityLeaveWorld(EntityLeaveWorldEvent event) {
+        if (event.getWorld().isClientSide)
+            return;
+        if (event.getEntity() instanceof ItemEntity) {
+            ItemEntityRegistry registry = ItemEntityRegistry.getIfPresent(event.getWorld());
+            if (registry != null)
+                registry.remove((ItemEntity) event.getEntity());
+        } else if (event.getEntity() instanceof SpiritEntity) {
+            ItemEntityRegistry registry = ItemEntityRegistry.getIfPresent(event.getWorld());
+            if (registry != null)
+                registry.releaseAll(event.getEntity());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        onBlockChanged(event.getWorld(), event.getPos());
+    }
+
+    @SubscribeEvent
+    public static void onBlockPlaced(BlockEvent.EntityPlaceEvent event) {
+        onBlockChanged(event.getWorld(), event.getPos());
+    }
+
+    @SubscribeEvent
+    public static void onBlockBroken(BlockEvent.BreakEvent event) {
+        //fired before the block is removed, the index classifies changed blocks at the end of the tick
+        onBlockChanged(event.getWorld(), event.getPos());
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            WorkAreaBlockIndex index = WorkAreaBlockIndex.getIfPresent((World) event.getWorld());
+            if (index != null)
+                index.onChunkLoad(event.getChunk().getPos());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            WorkAreaBlockIndex index = WorkAreaBlockIndex.getIfPresent((World) event.getWorld());
+            if (index != null)
+                index.onChunkUnload(event.getChunk().getPos());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            WorkAreaBlockIndex.remove((World) event.getWorld());
+            ItemEntityRegistry.remove((World) event.getWorld());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarted(FMLServerStartedEvent event) {
+        if (Occultism.SERVER_CONFIG.storage.exposeMetricsViaJmx.get())
+            StorageControllerMetricsRegistry.registerMBean();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(FMLServerStoppedEvent event) {
+        StorageUpdateDispatcher.clear();
+        StorageControllerMetricsRegistry.unregisterMBean();
+        WorkAreaBlockIndex.clear();
+        ItemEntityRegistry.clear();
+    }
+
+    private static void onBlockChanged(IWorld world, BlockPos pos) {
+        if (world instanceof World && !world.isClientSide()) {
+            WorkAreaBlockIndex index = WorkAreaBlockIndex.getIfPresent((World) world);
+            if (index != null)
+                index.onBlockChanged(pos);
+        }
+    }
     //endregion Static Methods
 }
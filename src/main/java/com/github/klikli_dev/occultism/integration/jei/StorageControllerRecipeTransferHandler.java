@@ -94,9 +94,9 @@ public class StorageControllerRecipeTransferHandler<T extends Container & IStora
         //if recipe is in recipe manager send by id, otherwise fallback to ingredient list
         if(doTransfer){
             if (player.getCommandSenderWorld().getRecipeManager().byKey(recipe.getId()).isPresent()) {
-                OccultismPackets.sendToServer(new MessageSetRecipeByID(recipe.getId()));
+                OccultismPackets.sendToServer(new MessageSetRecipeByID(recipe.getId(), maxTransfer));
             } else {
-                OccultismPackets.sendToServer(new MessageSetRecipe(this.recipeToTag(container, recipeLayout)));
+                OccultismPackets.sendToServer(new MessageSetRecipe(this.recipeToTag(container, recipeLayout), maxTransfer));
             }
         }
         return null;
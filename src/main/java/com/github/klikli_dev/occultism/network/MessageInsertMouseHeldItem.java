@@ -25,6 +25,7 @@ package com.github.klikli_dev.occultism.network;
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
 import com.github.klikli_dev.occultism.util.InputUtil;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketBuffer;
@@ -90,7 +91,7 @@ public class MessageInsertMouseHeldItem extends MessageBase {
             OccultismPackets.sendTo(player, new MessageUpdateMouseHeldItem(result));
 
             //update the storage controller
-            OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+            StorageUtil.sendStacksUpdate(player, storageController);
             player.containerMenu.broadcastChanges();
         }
     }
@@ -24,7 +24,9 @@ package com.github.klikli_dev.occultism.network;
 
 
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
+import com.github.klikli_dev.occultism.api.common.data.StorageView;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.server.MinecraftServer;
@@ -32,11 +34,47 @@ import net.minecraftforge.fml.network.NetworkEvent;
 
 public class MessageRequestStacks extends MessageBase {
 
+    //region Fields
+    /**
+     * The stacks version the client already has, -1 to request a full snapshot.
+     */
+    private long knownVersion = -1;
+    /**
+     * The view to evaluate on the server, null to receive all stacks.
+     */
+    private StorageView view;
+    /**
+     * The epoch and size of the stack palette the client already has.
+     */
+    private int paletteEpoch = -1;
+    private int paletteSize;
+    //endregion Fields
+
     //region Initialization
     public MessageRequestStacks() {
 
     }
 
+    public MessageRequestStacks(long knownVersion) {
+        this.knownVersion = knownVersion;
+    }
+
+    public MessageRequestStacks(long knownVersion, int paletteEpoch, int paletteSize) {
+        this.knownVersion = knownVersion;
+        this.paletteEpoch = paletteEpoch;
+        this.paletteSize = paletteSize;
+    }
+
+    public MessageRequestStacks(StorageView view) {
+        this.view = view;
+    }
+
+    public MessageRequestStacks(StorageView view, int paletteEpoch, int paletteSize) {
+        this.view = view;
+        this.paletteEpoch = paletteEpoch;
+        this.paletteSize = paletteSize;
+    }
+
     public MessageRequestStacks(PacketBuffer buf) {
         this.decode(buf);
     }
@@ -49,10 +87,14 @@ public class MessageRequestStacks extends MessageBase {
     public void onServerReceived(MinecraftServer minecraftServer, ServerPlayerEntity player,
                                  NetworkEvent.Context context) {
         if (player.containerMenu instanceof IStorageControllerContainer) {
-            IStorageController storageController = ((IStorageControllerContainer) player.containerMenu)
-                    .getStorageController();
+            IStorageControllerContainer container = (IStorageControllerContainer) player.containerMenu;
+            IStorageController storageController = container.getStorageController();
             if (storageController != null) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+                //continue from whatever the client has, the storage controller decides if a delta is possible.
+                container.setStacksVersion(this.knownVersion);
+                container.setStorageView(this.view);
+                container.setPalette(this.paletteEpoch, this.paletteSize);
+                StorageUtil.sendStacksUpdate(player, storageController);
                 OccultismPackets
                         .sendTo(player, new MessageUpdateLinkedMachines(storageController.getLinkedMachines()));
                 player.containerMenu.broadcastChanges();
@@ -62,12 +104,21 @@ public class MessageRequestStacks extends MessageBase {
 
     @Override
     public void encode(PacketBuffer buf) {
-
+        buf.writeLong(this.knownVersion);
+        buf.writeBoolean(this.view != null);
+        if (this.view != null)
+            this.view.encode(buf);
+        buf.writeInt(this.paletteEpoch);
+        buf.writeVarInt(this.paletteSize);
     }
 
     @Override
     public void decode(PacketBuffer buf) {
-
+        this.knownVersion = buf.readLong();
+        if (buf.readBoolean())
+            this.view = StorageView.from(buf);
+        this.paletteEpoch = buf.readInt();
+        this.paletteSize = buf.readVarInt();
     }
     //endregion Overrides
 }
@@ -23,10 +23,10 @@ package com.github.klikli_dev.occultism.network;
 
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import com.github.klikli_dev.occultism.common.misc.CraftingMatrixResolver;
 import com.github.klikli_dev.occultism.common.misc.ItemStackComparator;
 import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.ServerPlayerEntity;
-import net.minecraft.inventory.CraftingInventory;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
@@ -34,10 +34,10 @@ import net.minecraft.network.PacketBuffer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.fml.network.NetworkEvent;
-import net.minecraftforge.items.wrapper.PlayerMainInvWrapper;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Based on https://github.com/Lothrazar/Storage-Network
@@ -47,6 +47,7 @@ public class MessageSetRecipe extends MessageBase {
     //region Fields
     private CompoundNBT nbt;
     private int index = 0;
+    private boolean fillToMax;
     //endregion Fields
 
     //region Initialization
@@ -55,7 +56,12 @@ public class MessageSetRecipe extends MessageBase {
     }
 
     public MessageSetRecipe(CompoundNBT nbt) {
+        this(nbt, false);
+    }
+
+    public MessageSetRecipe(CompoundNBT nbt, boolean fillToMax) {
         this.nbt = nbt;
+        this.fillToMax = fillToMax;
     }
     //endregion Initialization
 
@@ -76,65 +82,40 @@ public class MessageSetRecipe extends MessageBase {
         //clear the current crafting matrix
         StorageUtil.clearOpenCraftingMatrix(player, false);
 
-        CraftingInventory craftMatrix = container.getCraftMatrix();
-
-        for (int slot = 0; slot < 9; slot++) {
-            Map<Integer, ItemStack> map = new HashMap<Integer, ItemStack>();
-
-            //parse the slots
+        //parse the slots, each slot holds up to 5 alternatives in order of preference
+        List<List<Predicate<ItemStack>>> slotAlternatives = new ArrayList<>(CraftingMatrixResolver.MATRIX_SIZE);
+        for (int slot = 0; slot < CraftingMatrixResolver.MATRIX_SIZE; slot++) {
+            List<Predicate<ItemStack>> alternatives = new ArrayList<>();
             ListNBT invList = this.nbt.getList("s" + slot, Constants.NBT.TAG_COMPOUND);
             for (int i = 0; i < invList.size(); i++) {
-                ItemStack s = ItemStack.of(invList.getCompound(i));
-                map.put(i, s);
+                ItemStack stack = ItemStack.of(invList.getCompound(i));
+                if (!stack.isEmpty())
+                    alternatives.add(new ItemStackComparator(stack, true));
             }
+            slotAlternatives.add(alternatives);
+        }
 
-            //region fill in recipe
-            for (int i = 0; i < map.size(); i++) {
-
-                ItemStack stack = map.get(i);
-                if (stack == null || stack.isEmpty()) {
-                    continue;
-                }
-
-                ItemStackComparator comparator = new ItemStackComparator(stack, true);
-
-                //attempt to get the desired stack from the player inventory
-                ItemStack extractedStack = StorageUtil
-                        .extractItem(new PlayerMainInvWrapper(player.inventory), comparator,
-                                1, true);
-                if (extractedStack != null && !extractedStack.isEmpty() && craftMatrix.getItem(slot).isEmpty()) {
-                    //if we found the desired stack, extract it for real and place it in the matrix
-                    StorageUtil.extractItem(new PlayerMainInvWrapper(player.inventory), comparator, 1, false);
-                    craftMatrix.setItem(slot, extractedStack);
-                    break;
-                }
+        new CraftingMatrixResolver(slotAlternatives)
+                .fill(player, container.getCraftMatrix(), storageController, this.fillToMax);
 
-                //if we did not find anything in the player inventory, get it from the network now
-                stack = storageController.getItemStack(!stack.isEmpty() ? comparator : null, 1, false);
-                if (!stack.isEmpty() && craftMatrix.getItem(slot).isEmpty()) {
-                    //if extraction was successful, place it in the matrix
-                    craftMatrix.setItem(slot, stack);
-                    break;
-                }
-            }
-            //endregion fill in recipe
-        }
         //sync to client
         container.updateCraftingSlots(true);
         //finally update controller content for client
-        OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+        StorageUtil.sendStacksUpdate(player, storageController);
     }
 
     @Override
     public void encode(PacketBuffer buf) {
         buf.writeNbt(this.nbt);
         buf.writeInt(this.index);
+        buf.writeBoolean(this.fillToMax);
     }
 
     @Override
     public void decode(PacketBuffer buf) {
         this.nbt = buf.readNbt();
         this.index = buf.readInt();
+        this.fillToMax = buf.readBoolean();
     }
     //endregion Overrides
 }
@@ -23,11 +23,10 @@ package com.github.klikli_dev.occultism.network;
 
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
+import com.github.klikli_dev.occultism.common.misc.CraftingMatrixResolver;
 import com.github.klikli_dev.occultism.util.StorageUtil;
 import com.google.common.base.Preconditions;
 import net.minecraft.entity.player.ServerPlayerEntity;
-import net.minecraft.inventory.CraftingInventory;
-import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.item.crafting.Ingredient;
 import net.minecraft.network.PacketBuffer;
@@ -36,7 +35,6 @@ import net.minecraft.util.NonNullList;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.crafting.IShapedRecipe;
 import net.minecraftforge.fml.network.NetworkEvent;
-import net.minecraftforge.items.wrapper.PlayerMainInvWrapper;
 
 /**
  * Based on https://github.com/Lothrazar/Storage-Network
@@ -45,6 +43,7 @@ public class MessageSetRecipeByID extends MessageBase {
 
     //region Fields
     private ResourceLocation id;
+    private boolean fillToMax;
     //endregion Fields
 
     //region Initialization
@@ -53,7 +52,12 @@ public class MessageSetRecipeByID extends MessageBase {
     }
 
     public MessageSetRecipeByID(ResourceLocation id) {
+        this(id, false);
+    }
+
+    public MessageSetRecipeByID(ResourceLocation id, boolean fillToMax) {
         this.id = id;
+        this.fillToMax = fillToMax;
     }
     //endregion Initialization
 
@@ -76,44 +80,25 @@ public class MessageSetRecipeByID extends MessageBase {
         Preconditions.checkArgument(recipe != null); //should not happen
 
         StorageUtil.clearOpenCraftingMatrix(player, false);
-        CraftingInventory craftMatrix = container.getCraftMatrix();
-        NonNullList<Ingredient> ingredients = this.getIngredientsForRecipe(recipe);
-
-        for (int slot = 0; slot < 9; slot++) {
-            Ingredient ingredient = ingredients.get(slot);
-            ItemStack extractedStack = StorageUtil.extractItem(new PlayerMainInvWrapper(player.inventory), ingredient,
-                    1, true);
-
-            if (extractedStack != null && !extractedStack.isEmpty() && craftMatrix.getItem(slot).isEmpty()) {
-                //if we found the desired stack, extract it for real and place it in the matrix
-                StorageUtil.extractItem(new PlayerMainInvWrapper(player.inventory), ingredient, 1, false);
-                craftMatrix.setItem(slot, extractedStack);
-                continue;
-            }
+        CraftingMatrixResolver.forIngredients(this.getIngredientsForRecipe(recipe))
+                .fill(player, container.getCraftMatrix(), storageController, this.fillToMax);
 
-            //if we did not find anything in the player inventory, get it from the network now
-            extractedStack = storageController.getItemStack(ingredient, 1, false);
-            if (!extractedStack.isEmpty() && craftMatrix.getItem(slot).isEmpty()) {
-                //if extraction was successful, place it in the matrix
-                craftMatrix.setItem(slot, extractedStack);
-                continue;
-            }
-            //endregion fill in recipe
-        }
         //sync to client
         container.updateCraftingSlots(true);
         //finally update controller content for client
-        OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+        StorageUtil.sendStacksUpdate(player, storageController);
     }
 
     @Override
     public void encode(PacketBuffer buf) {
         buf.writeResourceLocation(this.id);
+        buf.writeBoolean(this.fillToMax);
     }
 
     @Override
     public void decode(PacketBuffer buf) {
         this.id = buf.readResourceLocation();
+        this.fillToMax = buf.readBoolean();
     }
     //endregion Overrides
 
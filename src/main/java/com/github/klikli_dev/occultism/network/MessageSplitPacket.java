@@ -22,6 +22,7 @@
 
 package com.github.klikli_dev.occultism.network;
 
+import io.netty.buffer.ByteBuf;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.network.NetworkEvent;
 
@@ -29,37 +30,77 @@ import java.util.function.Supplier;
 
 public class MessageSplitPacket {
     /**
-     * The payload.
+     * The payload, a slice of the encoded wrapped message.
      */
-    private final byte[] payload;
+    private final ByteBuf payload;
     /**
      * Internal communication id. Used to indicate to what wrapped message this belongs to.
      */
     private final int communicationId;
+    /**
+     * The message index of the wrapped message, used to decode it once all parts arrived.
+     */
+    private final int messageIndex;
     /**
      * The index of the split message in the wrapped message.
      */
-    private final int packetIndex;
+    private final int partIndex;
+    /**
+     * The amount of parts the wrapped message was split into.
+     */
+    private final int partCount;
 
-    public MessageSplitPacket(final int communicationId, final int packetIndex, final byte[] payload) {
+    public MessageSplitPacket(final int communicationId, final int messageIndex, final int partIndex,
+                              final int partCount, final ByteBuf payload) {
         this.communicationId = communicationId;
-        this.packetIndex = packetIndex;
+        this.messageIndex = messageIndex;
+        this.partIndex = partIndex;
+        this.partCount = partCount;
         this.payload = payload;
     }
 
     public static void encode(MessageSplitPacket message, PacketBuffer buf) {
         buf.writeVarInt(message.communicationId);
-        buf.writeVarInt(message.packetIndex);
-        buf.writeByteArray(message.payload);
+        buf.writeVarInt(message.messageIndex);
+        buf.writeVarInt(message.partIndex);
+        buf.writeVarInt(message.partCount);
+        buf.writeVarInt(message.payload.readableBytes());
+        buf.writeBytes(message.payload, message.payload.readerIndex(), message.payload.readableBytes());
     }
 
     public static MessageSplitPacket decode(final PacketBuffer buf) {
-        return new MessageSplitPacket(buf.readVarInt(), buf.readVarInt(), buf.readByteArray());
+        int communicationId = buf.readVarInt();
+        int messageIndex = buf.readVarInt();
+        int partIndex = buf.readVarInt();
+        int partCount = buf.readVarInt();
+        //retained, so the payload outlives the packet buffer until the message is reassembled.
+        ByteBuf payload = buf.readRetainedSlice(buf.readVarInt());
+        return new MessageSplitPacket(communicationId, messageIndex, partIndex, partCount, payload);
     }
 
     public static boolean handle(MessageSplitPacket data, Supplier<NetworkEvent.Context> ctx) {
-        OccultismPackets.addPackagePart(data.communicationId, data.packetIndex, data.payload);
+        OccultismPackets.receivePart(data, ctx.get());
         ctx.get().setPacketHandled(true);
         return true;
     }
-}
\ No newline at end of file
+
+    public ByteBuf getPayload() {
+        return this.payload;
+    }
+
+    public int getCommunicationId() {
+        return this.communicationId;
+    }
+
+    public int getMessageIndex() {
+        return this.messageIndex;
+    }
+
+    public int getPartIndex() {
+        return this.partIndex;
+    }
+
+    public int getPartCount() {
+        return this.partCount;
+    }
+}
@@ -26,6 +26,7 @@ import com.github.klikli_dev.occultism.api.common.container.IStorageControllerCo
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
 import com.github.klikli_dev.occultism.common.misc.ItemStackComparator;
 import com.github.klikli_dev.occultism.util.InputUtil;
+import com.github.klikli_dev.occultism.util.StorageUtil;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketBuffer;
@@ -111,7 +112,7 @@ public class MessageTakeItem extends MessageBase {
             }
 
             //finally, update the storage controller stacks
-            OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+            StorageUtil.sendStacksUpdate(player, storageController);
             player.containerMenu.broadcastChanges();
         }
     }
@@ -23,7 +23,11 @@
 package com.github.klikli_dev.occultism.network;
 
 import com.github.klikli_dev.occultism.api.client.gui.IStorageControllerGui;
+import com.github.klikli_dev.occultism.common.misc.ItemStackKey;
+import com.github.klikli_dev.occultism.common.misc.StackPalette;
+import com.github.klikli_dev.occultism.Occultism;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.PlayerEntity;
@@ -34,23 +38,79 @@ import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.fml.network.NetworkEvent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 /**
  * This message sends the stacks in the currently opened storage controller.
+ * Either a full snapshot, a delta containing only the stacks that changed since the version the client already has,
+ * or a server evaluated view containing only the stacks the client displays.
+ * Stacks are sent as ids into the palette of the storage controller, palette entries are only sent once per client.
  */
 public class MessageUpdateStacks extends MessageBase {
 
     //region Fields
-    private static final int DEFAULT_BUFFER_SIZE = 2 * 1024;
+    /**
+     * Upper bound for the uncompressed payload, protects the client from malformed or malicious payloads.
+     */
+    private static final int MAX_UNCOMPRESSED_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_BYTES_PER_STACK = 64;
 
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Running estimate of the encoded bytes per stack, used to size buffers up front.
+     */
+    private static volatile int bytesPerStack = INITIAL_BYTES_PER_STACK;
+
+    /**
+     * The decoded stacks, only available on the client.
+     */
     private List<ItemStack> stacks;
+    /**
+     * Stacks that are no longer in the storage controller, only used for deltas. Only available on the client.
+     */
+    private List<ItemStack> removedStacks;
     private int usedSlots;
     private int maxSlots;
-    private ByteBuf payload;
-
+    /**
+     * The version the delta is based on, -1 for full snapshots.
+     */
+    private long fromVersion;
+    private long version;
+    /**
+     * The index of the first sent stack within the filtered and sorted stacks, only used for views.
+     */
+    private int viewStart;
+    /**
+     * The amount of stacks matching the view, -1 if this is not a view.
+     */
+    private int viewTotal = -1;
+    /**
+     * The epoch of the palette the stack ids refer to.
+     */
+    private int paletteEpoch;
+    /**
+     * The palette id of the first entry in paletteEntries.
+     */
+    private int paletteStart;
+    /**
+     * The palette entries the receiver does not know yet.
+     */
+    private List<ItemStack> paletteEntries;
+    private int[] stackIds;
+    private int[] stackCounts;
+    private int[] removedIds;
+    /**
+     * The compressed palette entries and stacks. Encoded on the server thread, then compressed on the storage sync
+     * worker, see {@link StorageSyncWorker}.
+     */
+    private CompletableFuture<byte[]> payload;
     //endregion Fields
 
     //region Initialization
@@ -58,28 +118,128 @@ public class MessageUpdateStacks extends MessageBase {
         this.decode(buf);
     }
 
-    public MessageUpdateStacks(List<ItemStack> stacks, int usedSlots, int maxSlots) {
-        this.stacks = stacks;
+    /**
+     * Creates a full snapshot or a delta.
+     *
+     * @param update      the stacks, encoded against the palette of the storage controller.
+     * @param usedSlots   the used slots.
+     * @param maxSlots    the max slots.
+     * @param fromVersion the version the delta is based on, -1 for full snapshots.
+     * @param version     the current stacks version.
+     */
+    public MessageUpdateStacks(StackPalette.Update update, int usedSlots, int maxSlots, long fromVersion,
+                               long version) {
+        this(update, 0, -1, usedSlots, maxSlots, fromVersion, version);
+    }
+
+    /**
+     * Creates a server evaluated view.
+     *
+     * @param update    the stacks of the view, encoded against the palette of the storage controller.
+     * @param viewStart the index of the first stack within the filtered and sorted stacks.
+     * @param viewTotal the amount of stacks matching the view.
+     * @param usedSlots the used slots.
+     * @param maxSlots  the max slots.
+     * @param version   the current stacks version.
+     */
+    public MessageUpdateStacks(StackPalette.Update update, int viewStart, int viewTotal, int usedSlots,
+                               int maxSlots, long version) {
+        this(update, viewStart, viewTotal, usedSlots, maxSlots, -1, version);
+    }
+
+    protected MessageUpdateStacks(StackPalette.Update update, int viewStart, int viewTotal, int usedSlots,
+                                  int maxSlots, long fromVersion, long version) {
+        this.viewStart = viewStart;
+        this.viewTotal = viewTotal;
         this.usedSlots = usedSlots;
         this.maxSlots = maxSlots;
+        this.fromVersion = fromVersion;
+        this.version = version;
+        //encode everything on the server thread, the worker only compresses bytes.
+        this.paletteEpoch = update.getEpoch();
+        this.paletteStart = update.getStart();
+        this.paletteEntries = update.getNewEntries();
+        this.stackIds = update.getStackIds();
+        this.stackCounts = update.getStackCounts();
+        this.removedIds = update.getRemovedIds();
         this.compress();
     }
     //endregion Initialization
 
+    //region Getter / Setter
+    public boolean isDelta() {
+        return this.fromVersion >= 0;
+    }
+
+    public boolean isView() {
+        return this.viewTotal >= 0;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public int getPaletteEpoch() {
+        return this.paletteEpoch;
+    }
+
+    /**
+     * @return the palette size the receiver has after this message.
+     */
+    public int getPaletteSize() {
+        return this.paletteStart + this.paletteEntries.size();
+    }
+
+    /**
+     * @return true once the payload is compressed and the message can be encoded without blocking.
+     */
+    public boolean isReady() {
+        return this.payload.isDone();
+    }
+
+    /**
+     * @return the size of the compressed payload, blocks until it is compressed.
+     */
+    public int getPayloadSize() {
+        return this.payload.join().length;
+    }
+    //endregion Getter / Setter
+
     //region Overrides
 
     @Override
     @OnlyIn(Dist.CLIENT)
     public void onClientReceived(Minecraft minecraft, PlayerEntity player, NetworkEvent.Context context) {
-        this.uncompress();
         if (minecraft.screen instanceof IStorageControllerGui) {
             IStorageControllerGui gui = (IStorageControllerGui) minecraft.screen;
-            if (gui != null) {
+            try {
+                this.uncompress();
+            } catch (DataFormatException | RuntimeException e) {
+                Occultism.LOGGER.warn("Received invalid storage stacks update.", e);
+                return;
+            }
+            if (!this.resolveStacks(gui.getStackPalette())) {
+                //our palette is out of sync, so we need a full snapshot including the palette
+                OccultismPackets.sendToServer(new MessageRequestStacks());
+                return;
+            }
+
+            if (this.isView()) {
+                gui.setStackView(this.stacks, this.viewStart, this.viewTotal);
+            } else if (this.isDelta()) {
+                if (gui.getStacksVersion() != this.fromVersion) {
+                    //we missed an update, so we need a full snapshot
+                    OccultismPackets.sendToServer(new MessageRequestStacks());
+                    return;
+                }
+                gui.updateStacks(this.stacks, this.removedStacks);
+            } else {
                 gui.setStacks(this.stacks);
-                gui.setUsedSlots(this.usedSlots);
-                gui.setMaxSlots(this.maxSlots);
-                gui.markDirty();
             }
+            gui.setStacksVersion(this.version);
+            gui.setUsedSlots(this.usedSlots);
+            gui.setMaxSlots(this.maxSlots);
+            gui.markDirty();
         }
     }
 
@@ -87,75 +247,204 @@ public class MessageUpdateStacks extends MessageBase {
     public void encode(PacketBuffer buf) {
         buf.writeVarInt(this.usedSlots);
         buf.writeVarInt(this.maxSlots);
+        buf.writeLong(this.fromVersion);
+        buf.writeLong(this.version);
+        buf.writeVarInt(this.viewStart);
+        buf.writeInt(this.viewTotal);
+        buf.writeInt(this.paletteEpoch);
+        buf.writeVarInt(this.paletteStart);
 
         //write compressed size, then compressed data
-        buf.writeVarInt(this.payload.readableBytes());
-        buf.writeBytes(this.payload, 0, this.payload.readableBytes());
+        //senders should wait for isReady(), so this only blocks if a message is sent directly.
+        byte[] data = this.payload.join();
+        buf.writeVarInt(data.length);
+        buf.writeBytes(data);
     }
 
     @Override
     public void decode(PacketBuffer buf) {
         this.usedSlots = buf.readVarInt();
         this.maxSlots = buf.readVarInt();
+        this.fromVersion = buf.readLong();
+        this.version = buf.readLong();
+        this.viewStart = buf.readVarInt();
+        this.viewTotal = buf.readInt();
+        this.paletteEpoch = buf.readInt();
+        this.paletteStart = buf.readVarInt();
         //read compressed size, then compressed data.
         int compressedSize = buf.readVarInt();
-        this.payload = Unpooled.buffer(compressedSize);
-        buf.readBytes(this.payload, 0, compressedSize);
+        if (compressedSize < 0 || compressedSize > buf.readableBytes())
+            throw new IllegalArgumentException("Invalid compressed stacks size " + compressedSize);
+        byte[] data = new byte[compressedSize];
+        buf.readBytes(data);
+        this.payload = CompletableFuture.completedFuture(data);
     }
     //endregion Overrides
 
-    //region Methods
-    public void uncompress() {
-        Inflater decompressor = new Inflater();
-        decompressor.setInput(this.payload.array());
+    //region Static Methods
+
+    /**
+     * Encodes the given palette entries and stacks. Runs on the server thread: writing item stacks calls into item and
+     * capability code that is not guaranteed to be thread safe.
+     *
+     * @param paletteEntries the new palette entries.
+     * @param stackIds       the palette ids of the stacks.
+     * @param stackCounts    the counts of the stacks.
+     * @param removedIds     the palette ids of the removed stacks.
+     * @return the uncompressed data.
+     */
+    private static byte[] encode(List<ItemStack> paletteEntries, int[] stackIds, int[] stackCounts,
+                                 int[] removedIds) {
+        //palette entries are full stacks, ids and counts are small varints.
+        int estimatedSize = 16 + bytesPerStack * paletteEntries.size() + 8 * (stackIds.length + removedIds.length);
+        ByteBuf uncompressedBuffer = PooledByteBufAllocator.DEFAULT.heapBuffer(estimatedSize);
+        try {
+            PacketBuffer uncompressed = new PacketBuffer(uncompressedBuffer);
+            uncompressed.writeVarInt(paletteEntries.size());
+            for (ItemStack entry : paletteEntries) {
+                uncompressed.writeItem(entry);
+            }
+            if (!paletteEntries.isEmpty())
+                bytesPerStack = Math.max(16, uncompressed.readableBytes() / paletteEntries.size());
 
-        // Create an expandable packet buffer to hold the decompressed data
-        PacketBuffer uncompressed = new PacketBuffer(Unpooled.buffer(this.payload.readableBytes() * 4));
+            uncompressed.writeVarInt(stackIds.length);
+            for (int i = 0; i < stackIds.length; i++) {
+                uncompressed.writeVarInt(stackIds[i]);
+                uncompressed.writeVarInt(stackCounts[i]);
+            }
 
-        // Decompress the data
-        byte[] buf = new byte[1024];
-        while (!decompressor.finished()) {
-            try {
-                int count = decompressor.inflate(buf);
-                uncompressed.writeBytes(buf, 0, count);
-            } catch (Exception e) {
+            uncompressed.writeVarInt(removedIds.length);
+            for (int id : removedIds) {
+                uncompressed.writeVarInt(id);
             }
+
+            byte[] data = new byte[uncompressed.readableBytes()];
+            uncompressed.readBytes(data);
+            return data;
+        } finally {
+            uncompressedBuffer.release();
         }
+    }
+
+    /**
+     * Compresses the given encoded data. Runs on the storage sync worker.
+     *
+     * @param data the data, see {@link #encode(List, int[], int[], int[])}.
+     * @return the compressed data.
+     */
+    private static byte[] compress(byte[] data) {
+        Deflater compressor = DEFLATER.get();
+        compressor.reset();
+        compressor.setInput(data);
+        compressor.finish();
 
-        int stacksSize = uncompressed.readInt();
-        this.stacks = new ArrayList<>(stacksSize);
-        for (int i = 0; i < stacksSize; i++) {
-            ItemStack stack = uncompressed.readItem();
-            stack.setCount(uncompressed.readInt());
-            this.stacks.add(stack);
+        //item data usually compresses well, start at a quarter and grow if needed.
+        byte[] output = new byte[Math.max(64, data.length / 4)];
+        int length = 0;
+        while (!compressor.finished()) {
+            if (length == output.length)
+                output = Arrays.copyOf(output, output.length * 2);
+            length += compressor.deflate(output, length, output.length - length);
         }
+        return length == output.length ? output : Arrays.copyOf(output, length);
     }
+    //endregion Static Methods
 
-    public void compress() {
-        Deflater compressor = new Deflater();
-        compressor.setLevel(Deflater.BEST_SPEED);
+    //region Methods
+    public void uncompress() throws DataFormatException {
+        byte[] data = this.payload.join();
+        Inflater decompressor = INFLATER.get();
+        decompressor.reset();
+        decompressor.setInput(data);
 
-        // Give the compressor the data to compress
-        //create buffer with reasonable size (will increase automatically as needed
-        PacketBuffer uncompressed = new PacketBuffer(Unpooled.buffer(DEFAULT_BUFFER_SIZE * this.stacks.size()));
-        uncompressed.writeInt(this.stacks.size());
+        //create a buffer with the expected size, it grows as needed up to the max size.
+        PacketBuffer uncompressed = new PacketBuffer(Unpooled.buffer(Math.min(Math.max(256, data.length * 4), MAX_UNCOMPRESSED_SIZE),
+                MAX_UNCOMPRESSED_SIZE));
+        while (!decompressor.finished()) {
+            if (!uncompressed.isWritable()) {
+                if (uncompressed.capacity() >= MAX_UNCOMPRESSED_SIZE)
+                    throw new DataFormatException("Uncompressed stacks exceed " + MAX_UNCOMPRESSED_SIZE + " bytes");
+                uncompressed.ensureWritable(Math.min(uncompressed.capacity(), MAX_UNCOMPRESSED_SIZE - uncompressed.capacity()));
+            }
+            int count = decompressor.inflate(uncompressed.array(), uncompressed.arrayOffset() + uncompressed.writerIndex(),
+                    uncompressed.writableBytes());
+            if (count == 0 && (decompressor.needsInput() || decompressor.needsDictionary()))
+                throw new DataFormatException("Truncated stacks payload");
+            uncompressed.writerIndex(uncompressed.writerIndex() + count);
+        }
 
-        for (ItemStack stack : this.stacks) {
-            uncompressed.writeItem(stack);
-            uncompressed.writeInt(stack.getCount());
+        int entryCount = uncompressed.readVarInt();
+        this.paletteEntries = new ArrayList<>(Math.min(entryCount, uncompressed.readableBytes()));
+        for (int i = 0; i < entryCount; i++) {
+            this.paletteEntries.add(uncompressed.readItem());
         }
 
-        compressor.setInput(uncompressed.array(), 0, uncompressed.readableBytes());
-        compressor.finish();
+        int stackCount = uncompressed.readVarInt();
+        if (stackCount < 0 || stackCount > uncompressed.readableBytes())
+            throw new DataFormatException("Invalid stack count " + stackCount);
+        this.stackIds = new int[stackCount];
+        this.stackCounts = new int[stackCount];
+        for (int i = 0; i < stackCount; i++) {
+            this.stackIds[i] = uncompressed.readVarInt();
+            this.stackCounts[i] = uncompressed.readVarInt();
+        }
 
+        int removedCount = uncompressed.readVarInt();
+        if (removedCount < 0 || removedCount > uncompressed.readableBytes())
+            throw new DataFormatException("Invalid removed stack count " + removedCount);
+        this.removedIds = new int[removedCount];
+        for (int i = 0; i < removedCount; i++) {
+            this.removedIds[i] = uncompressed.readVarInt();
+        }
+    }
 
-        this.payload = Unpooled.buffer(DEFAULT_BUFFER_SIZE);
-        // Compress the data
-        byte[] buf = new byte[1024];
-        while (!compressor.finished()) {
-            int count = compressor.deflate(buf);
-            this.payload.writeBytes(buf, 0, count);
+    /**
+     * Applies the received palette entries to the given palette and resolves the received stack ids.
+     *
+     * @param palette the palette of the receiver.
+     * @return false if the palette is out of sync with the sender.
+     */
+    public boolean resolveStacks(StackPalette palette) {
+        if (palette.getEpoch() != this.paletteEpoch) {
+            if (this.paletteStart != 0)
+                return false;
+            palette.reset(this.paletteEpoch);
+        }
+        if (this.paletteStart > palette.size())
+            return false;
+        palette.truncate(this.paletteStart);
+        for (ItemStack entry : this.paletteEntries) {
+            //items unknown to the client decode as empty, they keep their id but are not displayed.
+            palette.add(ItemStackKey.of(entry));
         }
+
+        this.stacks = new ArrayList<>(this.stackIds.length);
+        for (int i = 0; i < this.stackIds.length; i++) {
+            if (this.stackIds[i] < 0 || this.stackIds[i] >= palette.size())
+                return false;
+            ItemStackKey key = palette.get(this.stackIds[i]);
+            if (key != null)
+                this.stacks.add(key.createStack(this.stackCounts[i]));
+        }
+
+        this.removedStacks = new ArrayList<>(this.removedIds.length);
+        for (int id : this.removedIds) {
+            if (id < 0 || id >= palette.size())
+                return false;
+            ItemStackKey key = palette.get(id);
+            if (key != null)
+                this.removedStacks.add(key.createStack(1));
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the stacks on the calling thread and schedules compression on the storage sync worker.
+     * Must be called on the server thread.
+     */
+    public void compress() {
+        byte[] data = encode(this.paletteEntries, this.stackIds, this.stackCounts, this.removedIds);
+        this.payload = StorageSyncWorker.submit(() -> compress(data));
     }
     //endregion Methods
 }
@@ -29,12 +29,13 @@ import net.minecraft.util.RegistryKey;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.World;
 import net.minecraftforge.common.util.FakePlayer;
+import net.minecraftforge.fml.network.NetworkEvent;
 import net.minecraftforge.fml.network.NetworkRegistry;
 import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
 
 public class OccultismPackets {
-    public static final String PROTOCOL_VERSION = "1";
+    public static final String PROTOCOL_VERSION = "2";
     public static final ResourceLocation CHANNEL =  new ResourceLocation(Occultism.MODID, "main");
     public static final SimpleChannel INSTANCE = NetworkRegistry.newSimpleChannel(
             CHANNEL,
@@ -213,6 +214,12 @@ public class OccultismPackets {
                 MessageFairySupport::encode,
                 MessageFairySupport::new,
                 OccultismPacketHandler::handle);
+
+        INSTANCE.registerMessage(nextID(),
+                MessageSplitPacket.class,
+                MessageSplitPacket::encode,
+                MessageSplitPacket::decode,
+                MessageSplitPacket::handle);
     }
 
     public static <MSG> void sendToTracking(Entity entity, MSG message) {
@@ -231,17 +238,22 @@ public class OccultismPackets {
         }
     }
 
-    public static <MSG> void sendTo(ServerPlayerEntity player, MSG message) {
+    /**
+     * @return the amount of packets sent, more than one if the message had to be split.
+     */
+    public static <MSG> int sendTo(ServerPlayerEntity player, MSG message) {
         if (!(player instanceof FakePlayer)) {
             if (SPLITTER.shouldMessageBeSplit(message.getClass())) {
-                SPLITTER.sendToPlayer(player, message);
+                return SPLITTER.sendToPlayer(player, message);
             } else {
                 INSTANCE.send(PacketDistributor.PLAYER.with(() -> player), message);
+                return 1;
             }
         }
+        return 0;
     }
 
-    public static void addPackagePart(int communicationId, int packetIndex, byte[] payload) {
-        SPLITTER.addPackagePart(communicationId, packetIndex, payload);
+    public static void receivePart(MessageSplitPacket part, NetworkEvent.Context context) {
+        SPLITTER.receivePart(part, context);
     }
 }
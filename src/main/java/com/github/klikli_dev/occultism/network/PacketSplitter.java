@@ -22,9 +22,11 @@
 
 package com.github.klikli_dev.occultism.network;
 
-import com.google.common.primitives.Bytes;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.NetworkManager;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.fml.network.NetworkEvent;
@@ -35,21 +37,36 @@ import org.apache.logging.log4j.LogManager;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * Sends messages that are too large for a single packet as multiple MessageSplitPacket parts.
+ * Parts are slices of the encoded message, and are reassembled without copying once all parts of a message arrived.
+ */
 public class PacketSplitter {
     private final static int MAX_PACKET_SIZE = 943718;
-    private static final Map<Integer, Map<Integer, byte[]>> packageCache = new HashMap<>();
+    /**
+     * Partially received messages older than this are discarded.
+     */
+    private static final long PENDING_TIMEOUT_MILLIS = 60 * 1000;
+    /**
+     * The maximum amount of partially received messages per connection, the oldest is discarded if exceeded.
+     */
+    private static final int MAX_PENDING_PER_CONNECTION = 16;
+
     private final ResourceLocation CHANNEL_ID;
     private final SimpleChannel CHANNEL;
-    private final Map<Integer, ServerPlayerEntity> messageTargets = new HashMap<>();
-    private final Map<Integer, Integer> packetMaximums = new HashMap<>();
-    private final Set<Class<?>> messagesToSplit = new HashSet<>();
+    private final Map<Integer, Registration<?>> registrations = new ConcurrentHashMap<>();
+    private final Set<Class<?>> messagesToSplit = ConcurrentHashMap.newKeySet();
+    /**
+     * Partially received messages per connection and communication id. Weak keys, so closed connections do not leak.
+     */
+    private final Map<NetworkManager, Map<Integer, PendingMessage>> pendingMessages = new WeakHashMap<>();
     private final int maxNumberOfMessages;
-    private int comId = 0;
-    private int ID;
+    private final AtomicInteger comId = new AtomicInteger();
 
     public PacketSplitter(int maxNumberOfMessages, SimpleChannel CHANNEL, ResourceLocation CHANNEL_ID) {
         this.maxNumberOfMessages = maxNumberOfMessages;
@@ -61,27 +78,59 @@ public class PacketSplitter {
         return this.messagesToSplit.contains(clazz);
     }
 
-    public void sendToPlayer(ServerPlayerEntity player, Object message) {
-        if (this.ID == 0) this.ID++; // in case we wrapped around, 0 is reserved for server
-        int id = this.ID++;
-        this.messageTargets.put(id, player);
-        this.sendPacket(message, id, PacketDistributor.PLAYER.with(() -> player));
+    /**
+     * @return the amount of packets sent, more than one if the message was split, 0 if it was too large to send.
+     */
+    public int sendToPlayer(ServerPlayerEntity player, Object message) {
+        return this.sendMessage(message, PacketDistributor.PLAYER.with(() -> player));
     }
 
     public void sendToServer(Object message) {
-        this.messageTargets.put(0, null);
-        this.sendPacket(message, 0, PacketDistributor.SERVER.noArg());
+        this.sendMessage(message, PacketDistributor.SERVER.noArg());
     }
 
     //@Volatile mostly copied from SimpleChannel
-    private void sendPacket(Object Message, int id, PacketDistributor.PacketTarget target) {
-        final PacketBuffer bufIn = new PacketBuffer(Unpooled.buffer());
+    private int sendMessage(Object message, PacketDistributor.PacketTarget target) {
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        int index = this.CHANNEL.encodeMessage(message, buf);
+
+        if (buf.readableBytes() < MAX_PACKET_SIZE) {
+            target.send(target.getDirection().buildPacket(Pair.of(buf, index), this.CHANNEL_ID).getThis());
+            return 1;
+        }
+
+        try {
+            //skip the message index written by encodeMessage, each part carries it instead.
+            buf.skipBytes(1);
+            return this.sendParts(message, index, buf, target);
+        } finally {
+            buf.release();
+        }
+    }
 
-        //write the message id to be able to figure out where the packet is supposed to go in the wrapper
-        bufIn.writeInt(id);
+    private int sendParts(Object message, int index, ByteBuf buf, PacketDistributor.PacketTarget target) {
+        int start = buf.readerIndex();
+        int length = buf.readableBytes();
+        int partCount = (length + MAX_PACKET_SIZE - 1) / MAX_PACKET_SIZE;
+        int maximumParts = this.registrations.get(index).maxNumberOfMessages;
+        if (partCount > maximumParts) {
+            LogManager.getLogger().error("Failure Splitting Packets on Channel \"" + this.CHANNEL_ID + "\"." + " with " + message.getClass() + ". " +
+                    " Number of Packets required " + partCount + ", maximum number of packets for a message of this type " + maximumParts);
+            return 0;
+        }
 
-        int index = this.CHANNEL.encodeMessage(Message, bufIn);
-        target.send(target.getDirection().buildPacket(Pair.of(bufIn, index), this.CHANNEL_ID).getThis());
+        int communicationId = this.comId.getAndIncrement();
+        for (int partIndex = 0; partIndex < partCount; partIndex++) {
+            int offset = partIndex * MAX_PACKET_SIZE;
+            ByteBuf slice = buf.retainedSlice(start + offset, Math.min(MAX_PACKET_SIZE, length - offset));
+            try {
+                //send encodes immediately, so the slice can be released right after
+                this.CHANNEL.send(target, new MessageSplitPacket(communicationId, index, partIndex, partCount, slice));
+            } finally {
+                slice.release();
+            }
+        }
+        return partCount;
     }
 
     public <MSG> void registerMessage(int index, Class<MSG> messageType, BiConsumer<MSG, PacketBuffer> encoder, Function<PacketBuffer, MSG> decoder, BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer) {
@@ -89,161 +138,147 @@ public class PacketSplitter {
     }
 
     public <MSG> void registerMessage(int index, int maxNumberOfMessages, Class<MSG> messageType, BiConsumer<MSG, PacketBuffer> encoder, Function<PacketBuffer, MSG> decoder, BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer) {
-        this.packetMaximums.put(index, maxNumberOfMessages);
+        this.registrations.put(index, new Registration<>(maxNumberOfMessages, decoder, messageConsumer));
         this.messagesToSplit.add(messageType);
-
-        BiConsumer<MSG, PacketBuffer> wrappedEncoder = (msg, buffer) -> {
-            int id = buffer.readInt();
-            buffer.discardReadBytes();
-            ServerPlayerEntity player = this.messageTargets.get(id);
-            this.messageTargets.remove(id);
-
-            //write a zero for the number of packets in case the packet does not need to be split
-            buffer.writeShort(0);
-            encoder.accept(msg, buffer);
-            this.createSplittingConsumer(player).accept(msg, buffer);
-        };
-
-        this.CHANNEL.registerMessage(index, messageType, wrappedEncoder, this.createPacketCombiner().andThen(decoder), messageConsumer);
+        //messages small enough for a single packet are sent as usual
+        this.CHANNEL.registerMessage(index, messageType, encoder, decoder, messageConsumer);
     }
 
-    private <MSG> BiConsumer<MSG, PacketBuffer> createSplittingConsumer(ServerPlayerEntity playerEntity) {
-        return (MSG, buf) -> {
+    /**
+     * Stores a received part. Once all parts of the message arrived, the message is decoded and handled.
+     *
+     * @param part    the received part, takes ownership of its payload.
+     * @param context the network context the part was received in.
+     */
+    public void receivePart(MessageSplitPacket part, NetworkEvent.Context context) {
+        Registration<?> registration = this.registrations.get(part.getMessageIndex());
+        if (registration == null || part.getPartCount() > registration.maxNumberOfMessages ||
+                part.getPartIndex() < 0 || part.getPartIndex() >= part.getPartCount()) {
+            LogManager.getLogger().error("Received invalid split packet on Channel \"" + this.CHANNEL_ID + "\" for message " +
+                    part.getMessageIndex() + ", part " + part.getPartIndex() + " of " + part.getPartCount() + ".");
+            part.getPayload().release();
+            return;
+        }
 
-            if (buf.writerIndex() < MAX_PACKET_SIZE) {
-                return;
+        ByteBuf combined = null;
+        synchronized (this.pendingMessages) {
+            long now = System.currentTimeMillis();
+            this.removeExpired(now);
+
+            Map<Integer, PendingMessage> connectionMessages =
+                    this.pendingMessages.computeIfAbsent(context.getNetworkManager(), manager -> new LinkedHashMap<>());
+            PendingMessage pending = connectionMessages.get(part.getCommunicationId());
+            if (pending == null) {
+                if (connectionMessages.size() >= MAX_PENDING_PER_CONNECTION) {
+                    Iterator<PendingMessage> oldest = connectionMessages.values().iterator();
+                    oldest.next().release();
+                    oldest.remove();
+                }
+                pending = new PendingMessage(part.getMessageIndex(), part.getPartCount(), now);
+                connectionMessages.put(part.getCommunicationId(), pending);
             }
 
-            //read packetId for this packet
-            int packetId = buf.readUnsignedByte();
-
-            //this short is written here in case we are not splitting, ignore for split packages
-            buf.readShort();
-
-            //ignore the above as it is not required for the final packet
-            int currentIndex = buf.readerIndex();
-            int packetIndex = 0;
-            final int comId = this.comId++;
-
-            //Data for this packet
-            byte[] packetData = new byte[0];
-
-            int maximumPackets = this.packetMaximums.get(packetId);
-            int expectedPackets = buf.writerIndex() / MAX_PACKET_SIZE + 1;
-            boolean failure = false;
-
-            //Loop while data is available.
-            while (currentIndex < buf.writerIndex()) {
-
-                int sliceSize = Math.min(MAX_PACKET_SIZE, buf.writerIndex() - currentIndex);
-
-                //Extract the sub data array.
-                byte[] subPacketData = Arrays.copyOfRange(buf.array(), currentIndex, currentIndex + sliceSize);
-
-                if (packetIndex == 0) { // Assign Data for first Packet to this packet.
-                    packetData = subPacketData;
-                    packetIndex++;
-                } else {
-                    //Construct the split packet.
-                    MessageSplitPacket splitPacketMessage = new MessageSplitPacket(comId, packetIndex++, subPacketData);
-
-                    if (playerEntity == null) {
-                        this.CHANNEL.send(PacketDistributor.SERVER.noArg(), splitPacketMessage);
-                    } else {
-                        this.CHANNEL.send(PacketDistributor.PLAYER.with(() -> playerEntity), splitPacketMessage);
-                    }
-                }
+            if (!pending.add(part)) {
+                part.getPayload().release();
+                return;
+            }
+            if (pending.isComplete()) {
+                connectionMessages.remove(part.getCommunicationId());
+                combined = pending.combine();
+            }
+        }
 
-                //Move our working index.
-                currentIndex += sliceSize;
+        if (combined != null) {
+            try {
+                registration.dispatch(new PacketBuffer(combined), context);
+            } finally {
+                combined.release();
+            }
+        }
+    }
 
-                if (packetIndex > maximumPackets) {
-                    LogManager.getLogger().error("Failure Splitting Packets on Channel \"" + this.CHANNEL_ID + "\"." + " with " + MSG.getClass() + ". " +
-                            " Number of Packets sent " + (packetIndex - 1) + ", expected number of Packets " + expectedPackets + ", maximum number of packets for a message of this type " + this.packetMaximums.get(packetId));
-                    failure = true;
-                    break;
+    /**
+     * Discards partially received messages of closed connections and messages that timed out.
+     *
+     * @param now the current time in milliseconds.
+     */
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<NetworkManager, Map<Integer, PendingMessage>>> connections =
+                this.pendingMessages.entrySet().iterator();
+        while (connections.hasNext()) {
+            Map.Entry<NetworkManager, Map<Integer, PendingMessage>> connection = connections.next();
+            boolean connected = connection.getKey().isConnected();
+            Iterator<PendingMessage> messages = connection.getValue().values().iterator();
+            while (messages.hasNext()) {
+                PendingMessage message = messages.next();
+                if (!connected || now - message.receivedTime > PENDING_TIMEOUT_MILLIS) {
+                    message.release();
+                    messages.remove();
                 }
             }
+            if (connection.getValue().isEmpty())
+                connections.remove();
+        }
+    }
 
-            //start writing at the beginning
-            buf.setIndex(0, 0);
-
-            //packetId is required for forge to match the packet
-            buf.writeByte(packetId);
+    private static class Registration<MSG> {
+        private final int maxNumberOfMessages;
+        private final Function<PacketBuffer, MSG> decoder;
+        private final BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer;
 
-            //number of packets the packet was split into
-            buf.writeShort(failure ? expectedPackets : packetIndex);
-            buf.writeInt(comId);
-            buf.writeByteArray(packetData);
+        private Registration(int maxNumberOfMessages, Function<PacketBuffer, MSG> decoder, BiConsumer<MSG, Supplier<NetworkEvent.Context>> messageConsumer) {
+            this.maxNumberOfMessages = maxNumberOfMessages;
+            this.decoder = decoder;
+            this.messageConsumer = messageConsumer;
+        }
 
-            //copies the written data into a new buffer discarding the old one
-            buf.capacity(buf.writerIndex());
-        };
+        private void dispatch(PacketBuffer buf, NetworkEvent.Context context) {
+            MSG message = this.decoder.apply(buf);
+            this.messageConsumer.accept(message, () -> context);
+        }
     }
 
-    private Function<PacketBuffer, PacketBuffer> createPacketCombiner() {
-        return (buf) -> {
-            int size = buf.readShort();
+    private static class PendingMessage {
+        private final int messageIndex;
+        private final ByteBuf[] parts;
+        private final long receivedTime;
+        private int receivedParts;
 
-            //This packet was not split
-            if (size < 2) return buf;
-
-            int comId = buf.readInt();
-
-            Map<Integer, byte[]> partsMap = packageCache.get(comId);
-            if (partsMap == null || partsMap.size() != size - 1) {
-                int partSize = partsMap == null ? 0 : partsMap.size();
-                int id = buf.readUnsignedByte();
-                int max = this.packetMaximums.get(id) == null ? 0 : this.packetMaximums.get(id);
-                throw new PacketSplittingException(this.CHANNEL_ID, partSize, size, max, id);
-            }
-
-            //Add data that came from this packet
-            this.addPackagePart(comId, 0, buf.readByteArray());
+        private PendingMessage(int messageIndex, int partCount, long receivedTime) {
+            this.messageIndex = messageIndex;
+            this.parts = new ByteBuf[partCount];
+            this.receivedTime = receivedTime;
+        }
 
-            //Combine Cached Data
-            final byte[] packetData = partsMap.entrySet()
-                    .stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .map(Map.Entry::getValue)
-                    .reduce(new byte[0], Bytes::concat);
+        private boolean add(MessageSplitPacket part) {
+            if (part.getMessageIndex() != this.messageIndex || part.getPartCount() != this.parts.length ||
+                    this.parts[part.getPartIndex()] != null)
+                return false;
+            this.parts[part.getPartIndex()] = part.getPayload();
+            this.receivedParts++;
+            return true;
+        }
 
-            PacketBuffer buffer = new PacketBuffer(Unpooled.wrappedBuffer(packetData));
+        private boolean isComplete() {
+            return this.receivedParts == this.parts.length;
+        }
 
-            //remove data from cache
-            packageCache.remove(comId);
-            return buffer;
-        };
-    }
+        /**
+         * @return a composite of all parts, taking ownership of them.
+         */
+        private ByteBuf combine() {
+            CompositeByteBuf composite = Unpooled.compositeBuffer(this.parts.length);
+            for (ByteBuf part : this.parts) {
+                composite.addComponent(true, part);
+            }
+            return composite;
+        }
 
-    public void addPackagePart(int communicationId, int packetIndex, byte[] payload) {
-        //Sync on the message cache since this is still on the Netty thread.
-        synchronized (PacketSplitter.packageCache) {
-            PacketSplitter.packageCache.computeIfAbsent(communicationId, (id) -> new ConcurrentHashMap<>());
-            PacketSplitter.packageCache.get(communicationId).put(packetIndex, payload);
+        private void release() {
+            for (ByteBuf part : this.parts) {
+                if (part != null)
+                    part.release();
+            }
         }
     }
 }
-
-class PacketSplittingException extends RuntimeException {
-    ResourceLocation channnelId;
-    int actualSize;
-    int expectedSize;
-    int maximumSize;
-    int packetId;
-
-    public PacketSplittingException(ResourceLocation channnelId, int actualSize, int expectedSize, int maximumSize, int packetId) {
-        this.channnelId = channnelId;
-        this.actualSize = actualSize;
-        this.expectedSize = expectedSize;
-        this.maximumSize = maximumSize;
-        this.packetId = packetId;
-    }
-
-    @Override
-    public String getMessage() {
-        return "Failure Splitting Packets on Channel \"" + this.channnelId.toString() + "\"." +
-                " Number of Packets sent " + this.actualSize + ", Number of Packets expected " + this.expectedSize + ", maximum number of packets for a message of this type " + this.maximumSize;
-    }
-
-}
\ No newline at end of file
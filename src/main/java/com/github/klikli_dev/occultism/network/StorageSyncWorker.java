@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright 2020 klikli-dev, MrRiegel, Sam Bassettl.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT
+ * OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.github.klikli_dev.occultism.network;
+
+import com.github.klikli_dev.occultism.common.misc.StorageControllerMetrics;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Background worker for compressing storage sync payloads, so the server thread does not block on zlib. Payloads are
+ * encoded on the server thread before they are handed to the worker, item serialization is not thread safe.
+ * A single thread is used on purpose: tasks run in submission order, which keeps messages to a player in order
+ * without any further bookkeeping.
+ */
+public class StorageSyncWorker {
+
+    //region Fields
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Occultism Storage Sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //endregion Fields
+
+    //region Static Methods
+
+    /**
+     * Runs the given task on the worker.
+     *
+     * @param task the task.
+     * @param <T>  the result type.
+     * @return the future result.
+     */
+    public static <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, EXECUTOR);
+    }
+
+    /**
+     * Sends the given message from the server thread once all work submitted before, including the compression of
+     * the message itself, is done. Messages sent through this method arrive in the order this method was called.
+     *
+     * @param server  the server to send on.
+     * @param player  the player to send to.
+     * @param message the message to send.
+     */
+    public static void sendWhenReady(MinecraftServer server, ServerPlayerEntity player, MessageBase message) {
+        EXECUTOR.execute(() -> server.execute(() -> {
+            if (!player.hasDisconnected())
+                OccultismPackets.sendTo(player, message);
+        }));
+    }
+
+    /**
+     * Sends the given stack update like {@link #sendWhenReady(MinecraftServer, ServerPlayerEntity, MessageBase)} and
+     * records its size in the given metrics.
+     *
+     * @param server  the server to send on.
+     * @param player  the player to send to.
+     * @param message the message to send.
+     * @param metrics the metrics of the storage controller the message belongs to.
+     */
+    public static void sendWhenReady(MinecraftServer server, ServerPlayerEntity player, MessageUpdateStacks message,
+                                     StorageControllerMetrics metrics) {
+        EXECUTOR.execute(() -> server.execute(() -> {
+            if (!player.hasDisconnected()) {
+                int packets = OccultismPackets.sendTo(player, message);
+                if (packets > 0)
+                    metrics.recordStackUpdateSent(message.getPayloadSize(), packets);
+            }
+        }));
+    }
+    //endregion Static Methods
+}
@@ -22,8 +22,12 @@
 
 package com.github.klikli_dev.occultism.registry;
 
+import com.github.klikli_dev.occultism.api.common.tile.IStorageControllerBulkAccess;
 import com.github.klikli_dev.occultism.common.capability.DoubleJumpCapability;
+import com.github.klikli_dev.occultism.common.capability.EmptyStorageControllerBulkAccess;
 import com.github.klikli_dev.occultism.common.capability.FamiliarSettingsCapability;
+import net.minecraft.nbt.INBT;
+import net.minecraft.util.Direction;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.capabilities.Capability;
 import net.minecraftforge.common.capabilities.CapabilityInject;
@@ -44,6 +48,12 @@ public class OccultismCapabilities {
 
     @CapabilityInject(FamiliarSettingsCapability.class)
     public static Capability<FamiliarSettingsCapability> FAMILIAR_SETTINGS;
+
+    /**
+     * Bulk item access to storage controllers, provided by storage controllers and forwarded by stable wormholes.
+     */
+    @CapabilityInject(IStorageControllerBulkAccess.class)
+    public static Capability<IStorageControllerBulkAccess> STORAGE_CONTROLLER_BULK_ACCESS;
     //endregion Fields
 
     //region Static Methods
@@ -52,6 +62,20 @@ public class OccultismCapabilities {
                 .register(DoubleJumpCapability.class, new DoubleJumpCapability.Storage(), DoubleJumpCapability::new);
         CapabilityManager.INSTANCE
                 .register(FamiliarSettingsCapability.class, new FamiliarSettingsCapability.Storage(), FamiliarSettingsCapability::new);
+        //bulk access is provided by storage controllers, it has no persisted state. The default instance is empty.
+        CapabilityManager.INSTANCE
+                .register(IStorageControllerBulkAccess.class, new Capability.IStorage<IStorageControllerBulkAccess>() {
+                    @Override
+                    public INBT writeNBT(Capability<IStorageControllerBulkAccess> capability,
+                                         IStorageControllerBulkAccess instance, Direction side) {
+                        return null;
+                    }
+
+                    @Override
+                    public void readNBT(Capability<IStorageControllerBulkAccess> capability,
+                                        IStorageControllerBulkAccess instance, Direction side, INBT nbt) {
+                    }
+                }, EmptyStorageControllerBulkAccess::new);
     }
 
     public static void onPlayerClone(final PlayerEvent.Clone event) {
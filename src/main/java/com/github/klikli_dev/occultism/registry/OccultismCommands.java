@@ -25,6 +25,7 @@ package com.github.klikli_dev.occultism.registry;
 import com.github.klikli_dev.occultism.Occultism;
 import com.github.klikli_dev.occultism.common.command.DebugAICommand;
 import com.github.klikli_dev.occultism.common.command.NbtCommand;
+import com.github.klikli_dev.occultism.common.command.StorageCommand;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.tree.LiteralCommandNode;
 import net.minecraft.command.CommandSource;
@@ -44,6 +45,7 @@ public class OccultismCommands {
         LiteralCommandNode<CommandSource> occultismCommand = dispatcher.register(
                 Commands.literal(Occultism.MODID)
                         .then(NbtCommand.register(dispatcher))
+                        .then(StorageCommand.register(dispatcher))
                         .then(debugCommand)
         );
 
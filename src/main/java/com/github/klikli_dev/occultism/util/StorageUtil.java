@@ -24,7 +24,7 @@ package com.github.klikli_dev.occultism.util;
 
 import com.github.klikli_dev.occultism.api.common.container.IStorageControllerContainer;
 import com.github.klikli_dev.occultism.api.common.tile.IStorageController;
-import com.github.klikli_dev.occultism.network.OccultismPackets;
+import com.github.klikli_dev.occultism.common.misc.StorageUpdateDispatcher;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.inventory.CraftingInventory;
 import net.minecraft.inventory.Inventory;
@@ -32,6 +32,7 @@ import net.minecraft.inventory.InventoryHelper;
 import net.minecraft.inventory.container.Container;
 import net.minecraft.item.ItemStack;
 import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraftforge.items.CapabilityItemHandler;
@@ -48,6 +49,47 @@ import java.util.function.Predicate;
 public class StorageUtil {
     //region Static Methods
 
+    /**
+     * Schedules sending the storage controller stacks to the player, see {@link StorageUpdateDispatcher}.
+     * If the player has a storage controller container open only the changes since the last update, or the stacks
+     * of the requested view are sent, otherwise a full snapshot.
+     *
+     * @param player            the player to send the stacks to.
+     * @param storageController the storage controller to send the stacks of.
+     */
+    public static void sendStacksUpdate(ServerPlayerEntity player, IStorageController storageController) {
+        StorageUpdateDispatcher.markDirty(player, storageController);
+    }
+
+    /**
+     * Checks if the given stack matches the search text of a storage view.
+     * Supports the same prefixes as the storage controller gui, except for tooltip search which is client only and
+     * falls back to the display name.
+     *
+     * @param stack      the stack to check.
+     * @param searchText the lower case search text.
+     * @return true if the stack matches.
+     */
+    public static boolean matchesSearch(ItemStack stack, String searchText) {
+        if (searchText.isEmpty())
+            return true;
+        if (searchText.startsWith("@")) {
+            String name = TextUtil.getModNameForGameObject(stack.getItem());
+            return name != null && name.toLowerCase().contains(searchText.substring(1));
+        } else if (searchText.startsWith("$")) {
+            for (ResourceLocation tag : stack.getItem().getTags()) {
+                if (tag.toString().contains(searchText.substring(1)))
+                    return true;
+            }
+            return false;
+        } else {
+            String text = searchText.startsWith("#") ? searchText.substring(1) : searchText;
+            //the server only knows vanilla translations, so also check the registry name.
+            return stack.getHoverName().getString().toLowerCase().contains(text) ||
+                    stack.getItem().getRegistryName().getPath().contains(text);
+        }
+    }
+
     /**
      * Clears the crafting matrix of the open container, if that container implements IStorageControllerContainer
      *
@@ -86,7 +128,7 @@ public class StorageUtil {
 
             //finally if requested, send the updated storage controller contents to the player.
             if (sendStackUpdate) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+                StorageUtil.sendStacksUpdate(player, storageController);
                 ((Container) container).broadcastChanges();
             }
         }
@@ -124,7 +166,7 @@ public class StorageUtil {
 
             //finally if requested, send the updated storage controller contents to the player.
             if (sendStackUpdate) {
-                OccultismPackets.sendTo(player, storageController.getMessageUpdateStacks());
+                StorageUtil.sendStacksUpdate(player, storageController);
                 ((Container) container).broadcastChanges();
             }
         }